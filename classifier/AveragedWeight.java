@@ -0,0 +1,97 @@
+package edu.oregonstate.classifier;
+
+import edu.oregonstate.features.Feature;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * the weight of the perceptron, updated in place, and the sum of the weights after each update
+ * <p>
+ * The total weight is the sum of the weight after each update, which is divided by the number of violations
+ * to get the averaged weight. Instead of adding the weight to the total weight after each update, the updates
+ * of a training step are kept with their timestamp (the number of updates before them): after n updates
+ * u_1, ..., u_n of the weight w, the sum of the weights is n * w - sum (j - 1) * u_j, which is added to the
+ * total weight at the end of the step. An update only touches the features where the good and the bad state
+ * differ, and allocates nothing.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+class AveragedWeight {
+
+	/** the weight, shared with the search */
+	private double[] mweight;
+
+	/** the sum of the weights before the current training step */
+	private double[] mtotalWeight;
+
+	/** sum of (timestamp * update) of the current training step */
+	private double[] mdelayed;
+
+	/** the number of updates of the current training step */
+	private int mnoOfUpdates;
+
+	/**
+	 * start a training step on the weight and the total weight, which are updated in place
+	 *
+	 * @param weight
+	 * @param totalWeight
+	 */
+	void begin(double[] weight, double[] totalWeight) {
+		mweight = weight;
+		mtotalWeight = totalWeight;
+		if (mdelayed == null || mdelayed.length != weight.length) {
+			mdelayed = new double[weight.length];
+		}
+		mnoOfUpdates = 0;
+	}
+
+	/**
+	 * update the weight by the features of the good state minus the features of the bad state
+	 *
+	 * @param goodFeature
+	 * @param badFeature
+	 */
+	void update(Counter<String> goodFeature, Counter<String> badFeature) {
+		for (int i = 0; i < Feature.featuresName.length; i++) {
+			String feature = Feature.featuresName[i];
+			double update = goodFeature.getCount(feature) - badFeature.getCount(feature);
+			if (update == 0.0) continue;
+
+			mweight[i] += update;
+			mdelayed[i] += mnoOfUpdates * update;
+		}
+		mnoOfUpdates++;
+	}
+
+	/**
+	 * update the weight by the sum of several updates, such as the violated pairs of a constraint, as if they
+	 * were applied one by one
+	 *
+	 * @param update the sum of the updates, indexed as Feature.featuresName
+	 * @param delayed the sum of the updates times their position among them (from 0), updates may share a mean
+	 *                position, indexed as Feature.featuresName
+	 * @param noOfUpdates
+	 */
+	void update(double[] update, double[] delayed, int noOfUpdates) {
+		if (noOfUpdates == 0) return;
+
+		for (int i = 0; i < update.length; i++) {
+			if (update[i] == 0.0 && delayed[i] == 0.0) continue;
+
+			mweight[i] += update[i];
+			mdelayed[i] += mnoOfUpdates * update[i] + delayed[i];
+		}
+		mnoOfUpdates += noOfUpdates;
+	}
+
+	/** add the weights of the current training step to the total weight */
+	void end() {
+		if (mnoOfUpdates == 0) return;
+
+		for (int i = 0; i < mweight.length; i++) {
+			mtotalWeight[i] += mnoOfUpdates * mweight[i] - mdelayed[i];
+			mdelayed[i] = 0.0;
+		}
+		mnoOfUpdates = 0;
+	}
+}
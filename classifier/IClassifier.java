@@ -4,6 +4,7 @@ import java.util.*;
 
 import edu.oregonstate.general.FixedSizePriorityQueue;
 import edu.oregonstate.general.PriorityQueue;
+import edu.oregonstate.search.GoldOracle;
 import edu.oregonstate.search.State;
 import edu.stanford.nlp.dcoref.CorefCluster;
 
@@ -17,7 +18,7 @@ public interface IClassifier {
 
 	public void train();
 	
-	public void setRightLinks(Set<String> rightLinks);
+	public void setGoldOracle(GoldOracle goldOracle);
 	
 	public void setStatesLossFunction(PriorityQueue<State<CorefCluster>> statesLossFunction);
 	
@@ -35,7 +36,7 @@ public interface IClassifier {
 	
 	public double[] getTotalWeight();
 	
-	public void setState(Map<String, State<CorefCluster>> states);
+	public void setState(Map<Long, State<CorefCluster>> states);
 	
 	public void setSearchStep(int searchStep);
 	
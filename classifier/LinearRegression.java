@@ -3,6 +3,7 @@ package edu.oregonstate.classifier;
 import Jama.Matrix;
 import java.io.FileReader;
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -75,71 +76,6 @@ public class LinearRegression {
 	    return new Matrix(0, 0);
 	}
 	
-	/**
-	 * the last column correspond to the target
-	 * Hence, remove target values from the last column of a data set.
-	 * <p>
-	 * Meanwhile, we need to add 1 to 0 column of each row as a bias term 
-	 * 
-	 * @param data_set
-	 * @return
-	 */
-	private Matrix getDataPoints(Matrix data_set) {
-		Matrix features = data_set.getMatrix(0, data_set.getRowDimension() - 1, 0, data_set.getColumnDimension() - 2);
-		int rows = features.getRowDimension();
-		int cols = features.getColumnDimension() + 1;
-		Matrix modifiedFeatures = new Matrix(rows, cols);
-		for (int r = 0; r < rows; ++r) {
-			for (int c = 0; c < cols; ++c) {
-				if (c == 0) {
-					modifiedFeatures.set(r, c, 1.0);
-				} else {
-					modifiedFeatures.set(r, c, features.get(r, c-1));
-				}
-			}
-		}
-		return modifiedFeatures;
-	}
-	
-	/**
-	 * Returns the target values from the last column of a data set.
-	 * 
-	 * @param data_set
-	 * @return
-	 */
-	private Matrix getTargets(Matrix data_set) {
-	    return data_set.getMatrix(0, data_set.getRowDimension() - 1, data_set.getColumnDimension() - 1, data_set.getColumnDimension() - 1);
-	}
-	
-	/**
-	 * train the model using linear regression with L2 regularizer
-	 * <p>
-	 * The first column of the features should be set as all 1. because the first feature should 
-	 * perform as bias
-	 * <p>
-	 * Linear regression with L2 regularizer has the close form as follows:
-	 * w = (x^{T} * X + \lambda * I)^{-1} * X^{T} * t 
-	 * 
-	 * @param data n * m
-	 * @param targets n * 1
-	 * @param lambda
-	 * @return weight m * 1
-	 */
-	private Matrix trainLinearRegressionModel(Matrix data, Matrix targets, Double lambda) {
-		int column = data.getColumnDimension();
-		Matrix identity = Matrix.identity(column, column);
-		identity.times(lambda);
-		Matrix dataCopy = data.copy();
-		Matrix transponseData = dataCopy.transpose();
-		Matrix norm = transponseData.times(data);
-		Matrix circular = norm.plus(identity);
-		Matrix circularInverse = circular.inverse();
-		Matrix former = circularInverse.times(data.transpose());
-		Matrix weight = former.times(targets);
-		
-	    return weight;
-	}
-	
 	/**
 	 * test the model using the weights trained using linear regression with L2 regularizer
 	 * 
@@ -197,15 +133,55 @@ public class LinearRegression {
 	}
 	
 	
+	/**
+	 * train the model using linear regression with L2 regularizer
+	 * <p>
+	 * Each line of the training file is an example: the features followed by the target. A bias
+	 * feature with value 1 is put before the features. Linear regression with L2 regularizer has the close form
+	 * w = (X^{T} * X + \lambda * I)^{-1} * X^{T} * t, the lines are read once and only X^{T} * X and X^{T} * t
+	 * are kept, see {@link NormalEquations}
+	 * 
+	 * @return weight m * 1
+	 */
 	public Matrix calculateWeight() {
-			Matrix training = readMatrix(trainingFile);
-			/** get the actual features, meanwhile add a N*1 column vector with value being all 1 as the first column of the features */
-			Matrix trainingData = getDataPoints(training);
-			Matrix trainingTargets = getTargets(training);
-		    // Train the model.
-		    Matrix weights = trainLinearRegressionModel(trainingData, trainingTargets, lambda);
-		    // Evaluate the model using training and testing data.
-		    return weights;
+		NormalEquations equations = null;
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(trainingFile));
+			double[] example = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.equals("")) {
+					continue;
+				}
+				String fields[] = line.split(",");
+				if (equations == null) {
+					equations = new NormalEquations(fields.length);
+					example = new double[fields.length];
+					example[0] = 1.0;
+				}
+				if (fields.length != example.length) {
+					throw new RuntimeException(trainingFile + " has a line with " + fields.length + " columns, expected " + example.length);
+				}
+				
+				for (int i = 0; i < fields.length - 1; i++) {
+					example[i + 1] = parse(fields[i]);
+				}
+				equations.add(example, parse(fields[fields.length - 1]));
+			}
+			reader.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		
+		if (equations == null) {
+			throw new RuntimeException("there is no training example in " + trainingFile);
+		}
+		return equations.solve(lambda);
+	}
+	
+	private static double parse(String field) {
+		return field.equals("NaN") ? 0.0 : Double.parseDouble(field);
 	}
 	
 	/**
@@ -226,14 +202,7 @@ public class LinearRegression {
 	public static void main(String[] args) {
 		LinearRegression lr = new LinearRegression("/nfs/guille/xfern/users/xie/Experiment/corpus/TEMPORYRESUT/Fri-Nov-23-16:06:47-PST-2012-StanfordExperiment-gold-LinearRegression-10/trainingSet/initial.csv", 1.0);
 		try {
-			Matrix training = lr.readMatrix(lr.trainingFile);
-			/** get the actual features, meanwhile add a N*1 column vector with value being all 1 as the first column of the features */
-			Matrix trainingData = lr.getDataPoints(training);
-			Matrix trainingTargets = lr.getTargets(training);
-		    // Train the model.
-		    Matrix weights = lr.trainLinearRegressionModel(trainingData, trainingTargets, lr.lambda);
-		    // Evaluate the model using training and testing data.
-		    
+		    Matrix weights = lr.calculateWeight();
 		    System.out.println(ResultOutput.printModel(weights, Feature.featuresName));
 		} catch (Exception e) {
 			e.printStackTrace();
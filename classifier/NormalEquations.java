@@ -0,0 +1,96 @@
+package edu.oregonstate.classifier;
+
+import Jama.CholeskyDecomposition;
+import Jama.Matrix;
+import Jama.QRDecomposition;
+
+/**
+ * the normal equations of linear regression with L2 regularizer, accumulated one example at a time
+ * <p>
+ * Only X^{T} * X (m * m) and X^{T} * t (m * 1) are kept, so the memory does not depend on the number of
+ * examples. The weight w = (X^{T} * X + \lambda * I)^{-1} * X^{T} * t is solved by the Cholesky decomposition
+ * instead of the inverse, and by the QR decomposition if the matrix is not positive definite in the floating
+ * point arithmetic.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class NormalEquations {
+
+	/** the number of features m, including the bias */
+	private final int mdimension;
+
+	/** X^{T} * X, only the upper triangle is accumulated */
+	private final double[][] mnorm;
+
+	/** X^{T} * t */
+	private final double[] mmoment;
+
+	private long mnoOfExamples;
+
+	public NormalEquations(int dimension) {
+		mdimension = dimension;
+		mnorm = new double[dimension][dimension];
+		mmoment = new double[dimension];
+	}
+
+	/**
+	 * add one example
+	 *
+	 * @param example 1 * m
+	 * @param target
+	 */
+	public void add(double[] example, double target) {
+		if (example.length != mdimension) {
+			throw new RuntimeException("the example has " + example.length + " features, expected " + mdimension);
+		}
+
+		for (int i = 0; i < mdimension; i++) {
+			double value = example[i];
+			if (value == 0.0) continue;
+
+			double[] row = mnorm[i];
+			for (int j = i; j < mdimension; j++) {
+				row[j] += value * example[j];
+			}
+			mmoment[i] += value * target;
+		}
+		mnoOfExamples++;
+	}
+
+	public long getNoOfExamples() {
+		return mnoOfExamples;
+	}
+
+	/**
+	 * solve the normal equations
+	 *
+	 * @param lambda the coefficient of the L2 regularizer
+	 * @return weight m * 1
+	 */
+	public Matrix solve(double lambda) {
+		Matrix circular = new Matrix(mdimension, mdimension);
+		for (int i = 0; i < mdimension; i++) {
+			for (int j = i; j < mdimension; j++) {
+				circular.set(i, j, mnorm[i][j]);
+				circular.set(j, i, mnorm[i][j]);
+			}
+			circular.set(i, i, mnorm[i][i] + lambda);
+		}
+		Matrix moment = new Matrix(mdimension, 1);
+		for (int i = 0; i < mdimension; i++) {
+			moment.set(i, 0, mmoment[i]);
+		}
+
+		CholeskyDecomposition cholesky = new CholeskyDecomposition(circular);
+		if (cholesky.isSPD()) {
+			return cholesky.solve(moment);
+		}
+
+		QRDecomposition qr = new QRDecomposition(circular);
+		if (!qr.isFullRank()) {
+			throw new RuntimeException("the normal equations of " + mnoOfExamples + " examples are singular");
+		}
+		return qr.solve(moment);
+	}
+}
@@ -0,0 +1,368 @@
+package edu.oregonstate.classifier;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.oregonstate.features.Feature;
+import edu.oregonstate.search.State;
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * the sum of the feature differences (good minus bad) of the violated pairs of good states and bad states
+ * <p>
+ * A pair is violated when its cost scores violate the margin and its loss scores have the required relation.
+ * The sum over the pairs is sum_i c_i * x_i - sum_j d_j * x_j, where c_i is the number of violated pairs of the
+ * good state i and d_j the number of violated pairs of the bad state j. The counts are found by sorting the states
+ * by the loss score and by the cost score, and sweeping over the loss scores with a Fenwick tree over the ranks of
+ * the cost scores, so G good states and B bad states need O((G + B) log(G + B)) comparisons and the features of
+ * each state are read once, instead of converting the features of each of the G * B pairs.
+ * <p>
+ * The averaged perceptron also needs the position of each violated pair in the order in which the pairs used to be
+ * applied one by one: for each good state in the list order, the bad states in the list order. The pairs of the good
+ * state i take the positions P_i, ..., P_i + c_i - 1, where P_i is the sum of the counts of the good states before it,
+ * so the positions of a good state are a closed form of the counts. The position of a pair inside the block of its
+ * good state also depends on which earlier bad states violate the same good state, which the sweep does not find,
+ * so {@link #aggregateInOrder} gives all pairs of a block the mean position of the block, P_i + (c_i - 1) / 2. The
+ * positions of the good states are exact, and the positions of a bad state are summed over its good states by a
+ * second sweep with the mean positions in the Fenwick tree, so the order of the good states is kept exactly and
+ * only the order of the bad states inside one block is averaged.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+final class PairwiseViolations {
+
+	/** all pairs */
+	static final int ANY_LOSS = 0;
+
+	/** the pairs whose loss scores are different */
+	static final int DIFFERENT_LOSS = 1;
+
+	/** the pairs where the good state has a higher loss score than the bad state */
+	static final int HIGHER_LOSS = 2;
+
+	/**
+	 * the margin between the cost scores of a good state and a bad state, whether it is violated can only
+	 * become true when the cost of the bad state increases, or when the cost of the good state decreases
+	 */
+	abstract static class Margin {
+		abstract boolean isViolated(double goodCost, double badCost);
+	}
+
+	/** the bad state has a higher cost score */
+	static final Margin HIGHER_COST = new Margin() {
+		boolean isViolated(double goodCost, double badCost) {
+			return goodCost < badCost;
+		}
+	};
+
+	/** the bad state does not have a lower cost score */
+	static final Margin NOT_LOWER_COST = new Margin() {
+		boolean isViolated(double goodCost, double badCost) {
+			return goodCost <= badCost;
+		}
+	};
+
+	/** the hinge loss max(0, 1 - (good - bad)) is positive */
+	static final Margin HINGE = new Margin() {
+		boolean isViolated(double goodCost, double badCost) {
+			return 1 - (goodCost - badCost) > 0;
+		}
+	};
+
+	private PairwiseViolations() {
+	}
+
+	/** whether the pair is violated */
+	static boolean isViolated(State<CorefCluster> good, State<CorefCluster> bad, Margin margin, int lossRelation) {
+		double goodLoss = good.getScore()[0];
+		double badLoss = bad.getScore()[0];
+		if (lossRelation == DIFFERENT_LOSS && goodLoss == badLoss) return false;
+		if (lossRelation == HIGHER_LOSS && goodLoss <= badLoss) return false;
+
+		return margin.isViolated(good.getCostScore(), bad.getCostScore());
+	}
+
+	/**
+	 * add the feature differences of the violated pairs to the update
+	 *
+	 * @param goodStates
+	 * @param badStates
+	 * @param margin
+	 * @param lossRelation ANY_LOSS, DIFFERENT_LOSS or HIGHER_LOSS
+	 * @param update indexed as Feature.featuresName
+	 * @return the number of violated pairs
+	 */
+	static int aggregate(List<State<CorefCluster>> goodStates, List<State<CorefCluster>> badStates, Margin margin, int lossRelation, double[] update) {
+		return aggregate(goodStates, badStates, margin, lossRelation, update, null);
+	}
+
+	/**
+	 * add the feature differences of the violated pairs to the update, and the feature differences times the position
+	 * of the pair to the delayed update. The positions count the violated pairs from 0, for each good state in the list
+	 * order, the bad states in the list order, and the pairs of one good state share the mean position of its pairs
+	 *
+	 * @param goodStates
+	 * @param badStates
+	 * @param margin
+	 * @param lossRelation ANY_LOSS, DIFFERENT_LOSS or HIGHER_LOSS
+	 * @param update indexed as Feature.featuresName
+	 * @param delayed indexed as Feature.featuresName
+	 * @return the number of violated pairs
+	 */
+	static int aggregateInOrder(List<State<CorefCluster>> goodStates, List<State<CorefCluster>> badStates, Margin margin, int lossRelation, double[] update, double[] delayed) {
+		return aggregate(goodStates, badStates, margin, lossRelation, update, delayed);
+	}
+
+	/** the update, and the delayed update if it is not null */
+	private static int aggregate(List<State<CorefCluster>> goodStates, List<State<CorefCluster>> badStates, Margin margin, int lossRelation, double[] update, double[] delayed) {
+		int noOfGood = goodStates.size();
+		int noOfBad = badStates.size();
+		if (noOfGood == 0 || noOfBad == 0) return 0;
+
+		double[] goodCost = new double[noOfGood];
+		double[] goodLoss = new double[noOfGood];
+		for (int i = 0; i < noOfGood; i++) {
+			State<CorefCluster> state = goodStates.get(i);
+			goodCost[i] = state.getCostScore();
+			goodLoss[i] = lossRelation == ANY_LOSS ? 1.0 : state.getScore()[0];
+		}
+		double[] badCost = new double[noOfBad];
+		double[] badLoss = new double[noOfBad];
+		for (int j = 0; j < noOfBad; j++) {
+			State<CorefCluster> state = badStates.get(j);
+			badCost[j] = state.getCostScore();
+			badLoss[j] = lossRelation == ANY_LOSS ? 0.0 : state.getScore()[0];
+		}
+
+		int[] goodCounts = new int[noOfGood];
+		int[] badCounts = new int[noOfBad];
+		countHigherLoss(goodLoss, goodCost, badLoss, badCost, margin, goodCounts, badCounts);
+
+		// the pairs where the bad state has the higher loss score
+		if (lossRelation == DIFFERENT_LOSS) {
+			negate(goodLoss);
+			negate(badLoss);
+			countHigherLoss(goodLoss, goodCost, badLoss, badCost, margin, goodCounts, badCounts);
+		}
+
+		int violations = 0;
+		double[] goodPositions = new double[noOfGood];
+		double[] meanPositions = new double[noOfGood];
+		for (int i = 0; i < noOfGood; i++) {
+			int count = goodCounts[i];
+			if (count == 0) continue;
+			goodPositions[i] = (double) count * violations + (double) count * (count - 1) / 2.0;
+			meanPositions[i] = violations + (count - 1) / 2.0;
+			violations += count;
+		}
+
+		double[] badPositions = null;
+		if (delayed != null) {
+			badPositions = new double[noOfBad];
+			sumHigherLoss(goodLoss, goodCost, badLoss, badCost, margin, meanPositions, badPositions);
+			if (lossRelation == DIFFERENT_LOSS) {
+				negate(goodLoss);
+				negate(badLoss);
+				sumHigherLoss(goodLoss, goodCost, badLoss, badCost, margin, meanPositions, badPositions);
+			}
+		}
+
+		for (int i = 0; i < noOfGood; i++) {
+			if (goodCounts[i] == 0) continue;
+			Counter<String> features = goodStates.get(i).getFeatures();
+			addFeatures(update, features, goodCounts[i]);
+			if (delayed != null) {
+				addFeatures(delayed, features, goodPositions[i]);
+			}
+		}
+		for (int j = 0; j < noOfBad; j++) {
+			if (badCounts[j] == 0) continue;
+			Counter<String> features = badStates.get(j).getFeatures();
+			addFeatures(update, features, -badCounts[j]);
+			if (delayed != null) {
+				addFeatures(delayed, features, -badPositions[j]);
+			}
+		}
+		return violations;
+	}
+
+	/** negate the values in place */
+	private static void negate(double[] values) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = -values[i];
+		}
+	}
+
+	/**
+	 * count the violated pairs where the good state has a higher loss score than the bad state
+	 */
+	private static void countHigherLoss(double[] goodLoss, double[] goodCost, double[] badLoss, double[] badCost, Margin margin, int[] goodCounts, int[] badCounts) {
+		int noOfGood = goodLoss.length;
+		int noOfBad = badLoss.length;
+		int[] goodByLoss = order(goodLoss);
+		int[] badByLoss = order(badLoss);
+		int[] goodByCost = order(goodCost);
+		int[] badByCost = order(badCost);
+		int[] goodRank = rank(goodByCost);
+		int[] badRank = rank(badByCost);
+
+		// go through the good states by increasing loss, the tree holds the bad states with a lower loss
+		int[] tree = new int[noOfBad + 1];
+		int next = 0;
+		for (int good : goodByLoss) {
+			while (next < noOfBad && badLoss[badByLoss[next]] < goodLoss[good]) {
+				increment(tree, badRank[badByLoss[next]]);
+				next++;
+			}
+
+			// the bad states from the rank first violate the margin
+			int first = firstBad(goodCost[good], badCost, badByCost, margin);
+			goodCounts[good] += next - prefix(tree, first);
+		}
+
+		// go through the bad states by decreasing loss, the tree holds the good states with a higher loss
+		tree = new int[noOfGood + 1];
+		next = noOfGood - 1;
+		for (int k = noOfBad - 1; k >= 0; k--) {
+			int bad = badByLoss[k];
+			while (next >= 0 && goodLoss[goodByLoss[next]] > badLoss[bad]) {
+				increment(tree, goodRank[goodByLoss[next]]);
+				next--;
+			}
+
+			// the good states before the rank end violate the margin
+			int end = endGood(badCost[bad], goodCost, goodByCost, margin);
+			badCounts[bad] += prefix(tree, end);
+		}
+	}
+
+	/**
+	 * add the weights of the good states to the sums of the bad states of the violated pairs where the good state
+	 * has a higher loss score than the bad state
+	 */
+	private static void sumHigherLoss(double[] goodLoss, double[] goodCost, double[] badLoss, double[] badCost, Margin margin, double[] goodWeights, double[] badSums) {
+		int noOfGood = goodLoss.length;
+		int[] goodByLoss = order(goodLoss);
+		int[] badByLoss = order(badLoss);
+		int[] goodByCost = order(goodCost);
+		int[] goodRank = rank(goodByCost);
+
+		// go through the bad states by decreasing loss, the tree holds the weights of the good states with a higher loss
+		double[] tree = new double[noOfGood + 1];
+		int next = noOfGood - 1;
+		for (int k = badByLoss.length - 1; k >= 0; k--) {
+			int bad = badByLoss[k];
+			while (next >= 0 && goodLoss[goodByLoss[next]] > badLoss[bad]) {
+				add(tree, goodRank[goodByLoss[next]], goodWeights[goodByLoss[next]]);
+				next--;
+			}
+
+			// the good states before the rank end violate the margin
+			int end = endGood(badCost[bad], goodCost, goodByCost, margin);
+			badSums[bad] += prefix(tree, end);
+		}
+	}
+
+	/** the first rank of the bad states sorted by cost which violates the margin with the good cost */
+	private static int firstBad(double goodCost, double[] badCost, int[] badByCost, Margin margin) {
+		int low = 0;
+		int high = badByCost.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (margin.isViolated(goodCost, badCost[badByCost[middle]])) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	/** the first rank of the good states sorted by cost which does not violate the margin with the bad cost */
+	private static int endGood(double badCost, double[] goodCost, int[] goodByCost, Margin margin) {
+		int low = 0;
+		int high = goodByCost.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (margin.isViolated(goodCost[goodByCost[middle]], badCost)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/** the indexes sorted by increasing value */
+	private static int[] order(final double[] values) {
+		Integer[] indexes = new Integer[values.length];
+		for (int i = 0; i < values.length; i++) {
+			indexes[i] = i;
+		}
+		Arrays.sort(indexes, new Comparator<Integer>() {
+			public int compare(Integer i, Integer j) {
+				return Double.compare(values[i], values[j]);
+			}
+		});
+
+		int[] order = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			order[i] = indexes[i];
+		}
+		return order;
+	}
+
+	/** index -> its position in the order */
+	private static int[] rank(int[] order) {
+		int[] rank = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			rank[order[i]] = i;
+		}
+		return rank;
+	}
+
+	/** add one at the rank of the Fenwick tree */
+	private static void increment(int[] tree, int rank) {
+		for (int i = rank + 1; i < tree.length; i += i & -i) {
+			tree[i]++;
+		}
+	}
+
+	/** add the value at the rank of the Fenwick tree */
+	private static void add(double[] tree, int rank, double value) {
+		for (int i = rank + 1; i < tree.length; i += i & -i) {
+			tree[i] += value;
+		}
+	}
+
+	/** the sum of the values of the Fenwick tree whose rank is lower than end */
+	private static double prefix(double[] tree, int end) {
+		double sum = 0.0;
+		for (int i = end; i > 0; i -= i & -i) {
+			sum += tree[i];
+		}
+		return sum;
+	}
+
+	/** the number of elements of the Fenwick tree whose rank is lower than end */
+	private static int prefix(int[] tree, int end) {
+		int sum = 0;
+		for (int i = end; i > 0; i -= i & -i) {
+			sum += tree[i];
+		}
+		return sum;
+	}
+
+	/** add the features times the count to the update */
+	private static void addFeatures(double[] update, Counter<String> features, double count) {
+		for (int i = 0; i < Feature.featuresName.length; i++) {
+			double value = features.getCount(Feature.featuresName[i]);
+			if (value != 0.0) {
+				update[i] += count * value;
+			}
+		}
+	}
+}
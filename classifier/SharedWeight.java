@@ -0,0 +1,59 @@
+package edu.oregonstate.classifier;
+
+/**
+ * the weight and the total weight shared by the searches of the asynchronous (Hogwild) training
+ * <p>
+ * The searches of several topics get the same arrays through setWeight and setTotalWeight, and the classifiers
+ * update them in place without locks. A search may read a weight which another search is updating, which only
+ * mixes the features of the two updates, so the arrays are plain double arrays.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class SharedWeight {
+
+	private final double[] mweight;
+
+	private final double[] mtotalWeight;
+
+	/**
+	 * share copies of the weights
+	 *
+	 * @param weight
+	 * @param totalWeight
+	 */
+	public SharedWeight(double[] weight, double[] totalWeight) {
+		mweight = weight.clone();
+		mtotalWeight = totalWeight.clone();
+	}
+
+	public double[] getWeight() {
+		return mweight;
+	}
+
+	public double[] getTotalWeight() {
+		return mtotalWeight;
+	}
+
+	/** whether the weights are still the shared arrays, which means the classifier updated them in place */
+	public boolean isShared(double[] weight, double[] totalWeight) {
+		return weight == mweight && totalWeight == mtotalWeight;
+	}
+
+	/**
+	 * w = (1 - eta) * w + eta * delta, and add w to the total weight, in place and one feature at a time,
+	 * so the other searches never see a weight which is only scaled
+	 *
+	 * @param weight
+	 * @param totalWeight
+	 * @param eta
+	 * @param delta
+	 */
+	static void update(double[] weight, double[] totalWeight, double eta, double[] delta) {
+		for (int i = 0; i < weight.length; i++) {
+			double value = (1 - eta) * weight[i] + eta * delta[i];
+			weight[i] = value;
+			totalWeight[i] += value;
+		}
+	}
+}
@@ -8,6 +8,7 @@ import edu.oregonstate.general.DoubleOperation;
 import edu.oregonstate.general.FixedSizePriorityQueue;
 import edu.oregonstate.general.PriorityQueue;
 import edu.oregonstate.io.ResultOutput;
+import edu.oregonstate.search.GoldOracle;
 import edu.oregonstate.search.State;
 import edu.oregonstate.util.EecbConstants;
 import edu.stanford.nlp.dcoref.CorefCluster;
@@ -48,7 +49,7 @@ public class StochasticGradient implements IClassifier {
 	private double mbestScore;
 	
 	/** states information */
-	private Map<String, State<CorefCluster>> mStates;
+	private Map<Long, State<CorefCluster>> mStates;
 	
 	/** row of the initial weight */
 	private int row;
@@ -73,7 +74,7 @@ public class StochasticGradient implements IClassifier {
 		return mEta;
 	}
 	
-	public void setRightLinks(Set<String> rightLinks){
+	public void setGoldOracle(GoldOracle goldOracle){
 	}
 	
 	public void setStatesLossFunction(PriorityQueue<State<CorefCluster>> statesLossFunction) {
@@ -108,7 +109,7 @@ public class StochasticGradient implements IClassifier {
 		return mTotalWeight;
 	}
 	
-	public void setState(Map<String, State<CorefCluster>> states) {
+	public void setState(Map<Long, State<CorefCluster>> states) {
 		mStates = states;
 	}
 	
@@ -129,10 +130,9 @@ public class StochasticGradient implements IClassifier {
 	 */
 	public void train() {
 		double[] regularizer = calculateWeight();
-		double[] weightedRegularizer = DoubleOperation.time(regularizer, mEta);
-		mWeight = DoubleOperation.time(mWeight, 1 - mEta);
-		mWeight = DoubleOperation.add(mWeight, weightedRegularizer);
-		mTotalWeight = DoubleOperation.add(mTotalWeight, mWeight);
+		
+		// in place, the weight can be shared by the searches of the asynchronous training
+		SharedWeight.update(mWeight, mTotalWeight, mEta, regularizer);
 	}
 	
 	/** calculate the total weight */
@@ -147,8 +147,8 @@ public class StochasticGradient implements IClassifier {
 	/** calculate the weight according to whether the score is one state is better than that of the other state */
 	private double[] calculatePairwiseWeight() {
 		double[] pairwiseMatrix = new double[row];
-		List<String> stateKeys = new ArrayList<String>();
-		for (String key : mStates.keySet()) {
+		List<Long> stateKeys = new ArrayList<Long>();
+		for (Long key : mStates.keySet()) {
 			stateKeys.add(key);
 		}
 		
@@ -187,7 +187,7 @@ public class StochasticGradient implements IClassifier {
 	/** calculate the weight according to whether the score of one state is better than the loss function */
 	private double[] calculateSingleWeight() {
 		double[] singleMatrix = new double[row];
-		for (String key : mStates.keySet()) {
+		for (Long key : mStates.keySet()) {
 			State<CorefCluster> state = mStates.get(key);
 			double fscore = state.getScore()[0];
 			double costscore = state.getCostScore();
@@ -8,6 +8,7 @@ import edu.oregonstate.general.DoubleOperation;
 import edu.oregonstate.general.FixedSizePriorityQueue;
 import edu.oregonstate.general.PriorityQueue;
 import edu.oregonstate.io.ResultOutput;
+import edu.oregonstate.search.GoldOracle;
 import edu.oregonstate.search.State;
 import edu.oregonstate.util.EecbConstants;
 import edu.stanford.nlp.dcoref.CorefCluster;
@@ -48,7 +49,7 @@ public class StochasticGradientConsideringBeam implements IClassifier {
 	private double mbestScore;
 	
 	/** states information */
-	private Map<String, State<CorefCluster>> mStates;
+	private Map<Long, State<CorefCluster>> mStates;
 	
 	/** row of the initial weight */
 	private int row;
@@ -76,7 +77,7 @@ public class StochasticGradientConsideringBeam implements IClassifier {
 		return mEta;
 	}
 	
-	public void setRightLinks(Set<String> rightLinks){
+	public void setGoldOracle(GoldOracle goldOracle){
 	}
 	
 	public void setStatesLossFunction(PriorityQueue<State<CorefCluster>> statesLossFunction) {
@@ -111,7 +112,7 @@ public class StochasticGradientConsideringBeam implements IClassifier {
 		return mTotalWeight;
 	}
 	
-	public void setState(Map<String, State<CorefCluster>> states) {
+	public void setState(Map<Long, State<CorefCluster>> states) {
 		mStates = states;
 	}
 	
@@ -132,10 +133,9 @@ public class StochasticGradientConsideringBeam implements IClassifier {
 	public void train() {
 		mViolations = 0;
 		double[] regularizer = calculateWeight();
-		double[] weightedRegularizer = DoubleOperation.time(regularizer, mEta);
-		mWeight = DoubleOperation.time(mWeight, 1 - mEta);
-		mWeight = DoubleOperation.add(mWeight, weightedRegularizer);
-		mTotalWeight = DoubleOperation.add(mTotalWeight, mWeight);
+		
+		// in place, the weight can be shared by the searches of the asynchronous training
+		SharedWeight.update(mWeight, mTotalWeight, mEta, regularizer);
 	}
 	
 	/** calculate the total weight */
@@ -155,35 +155,13 @@ public class StochasticGradientConsideringBeam implements IClassifier {
 		}
 		
 		List<State<CorefCluster>> unBeamLists = new ArrayList<State<CorefCluster>>();
-		for (String id : mStates.keySet()) {
+		for (Long id : mStates.keySet()) {
 			unBeamLists.add(mStates.get(id));
 		}
 		
-		for (int i = 0; i < beamLists.size(); i++) {
-			State<CorefCluster> iState = beamLists.get(i);
-			double ifscore = iState.getScore()[0];
-			double icostscore = iState.getCostScore();
-			Counter<String> ifeature = iState.getFeatures();
-			
-			for (int j = 0; j < unBeamLists.size(); j++) {
-				State<CorefCluster> jState = unBeamLists.get(j);
-				double jfscore = jState.getScore()[0];
-				double jcostscore = jState.getCostScore();
-				Counter<String> jfeature = jState.getFeatures();
-				
-				if (ifscore == jfscore) continue;
-				
-				int indicator = pairwiseIndicatorFunction(ifscore, jfscore);
-				double loss = Math.max(0.0, 1 - indicator * (icostscore - jcostscore));
-				if (loss > 0) {
-					double[] difference = convertFeature(ifeature, jfeature);
-					double[] signeddifference = DoubleOperation.time(difference, indicator);
-					pairwiseMatrix = DoubleOperation.add(pairwiseMatrix, signeddifference);
-					mViolations++;
-				}
-			
-			}
-		}
+		// the pairs where the beam state has the higher loss score, and the pairs where the other state has it
+		mViolations += PairwiseViolations.aggregate(beamLists, unBeamLists, PairwiseViolations.HINGE, PairwiseViolations.HIGHER_LOSS, pairwiseMatrix);
+		mViolations += PairwiseViolations.aggregate(unBeamLists, beamLists, PairwiseViolations.HINGE, PairwiseViolations.HIGHER_LOSS, pairwiseMatrix);
 		
 		return pairwiseMatrix;
 	}
@@ -197,7 +175,7 @@ public class StochasticGradientConsideringBeam implements IClassifier {
 	/** calculate the weight according to whether the score of one state is better than the loss function */
 	private double[] calculateSingleWeight() {
 		double[] singleMatrix = new double[row];
-		for (String key : mStates.keySet()) {
+		for (Long key : mStates.keySet()) {
 			State<CorefCluster> state = mStates.get(key);
 			double fscore = state.getScore()[0];
 			double costscore = state.getCostScore();
@@ -236,18 +214,6 @@ public class StochasticGradientConsideringBeam implements IClassifier {
 		return features;
 	}
 	
-	/** convert two feature vector to a double array */
-	private double[] convertFeature(Counter<String> ifeature, Counter<String> jfeature) {
-		double[] difference = new double[row]; 
-		for (int i = 0; i < Feature.featuresName.length; i++) {
-			String feature = Feature.featuresName[i];
-			double ivalue = ifeature.getCount(feature);
-			double jvalue = jfeature.getCount(feature);
-			difference[i] = ivalue - jvalue;
-		}
-		
-		return difference;
-	}
 	
 	
 	
@@ -1,21 +1,19 @@
 package edu.oregonstate.classifier;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 
 import edu.oregonstate.experiment.ExperimentConstructor;
 import edu.oregonstate.features.Feature;
-import edu.oregonstate.general.DoubleOperation;
 import edu.oregonstate.general.FixedSizePriorityQueue;
 import edu.oregonstate.general.PriorityQueue;
 import edu.oregonstate.io.ResultOutput;
 import edu.stanford.nlp.dcoref.CorefCluster;
-import edu.stanford.nlp.dcoref.Mention;
 import edu.stanford.nlp.ie.ClassifierCombiner;
-import edu.stanford.nlp.stats.Counter;
+import edu.oregonstate.search.GoldOracle;
 import edu.oregonstate.search.State;
 
 /**
@@ -26,14 +24,14 @@ import edu.oregonstate.search.State;
  */
 public class StructuredPerceptronConsideringBeam implements IClassifier {
 
-	// the right links according to the gold corpus
-	private Set<String> mrightLinks;
+	/** tells whether the candidate states only contain right links according to the gold corpus */
+	private GoldOracle mgoldOracle;
 	
 	/** each state with its loss function according to max-heap, the first one is the state with the highest score */
 	private PriorityQueue<State<CorefCluster>> mstatesLossFunction;
 	
 	/** states */
-	private Map<String, State<CorefCluster>> mstates;
+	private Map<Long, State<CorefCluster>> mstates;
 	
 	/** beam */
 	private FixedSizePriorityQueue<State<CorefCluster>> mBeam;
@@ -56,6 +54,15 @@ public class StructuredPerceptronConsideringBeam implements IClassifier {
 	// totalWeight
 	private double[] mTotalWeight;
 	
+	/** updates the weight and the total weight in place */
+	private AveragedWeight mAveragedWeight = new AveragedWeight();
+	
+	/** the sum of the updates of the violated pairs of a constraint */
+	private double[] mUpdate;
+	
+	/** the sum of the updates of the violated pairs of a constraint times their position */
+	private double[] mDelayedUpdate;
+	
 	// search index, for output feature
 	private int mSearchStep;
 	
@@ -72,7 +79,7 @@ public class StructuredPerceptronConsideringBeam implements IClassifier {
     	mTotalWeight = weight;
     }
 	
-	public void setState(Map<String, State<CorefCluster>> states) {
+	public void setState(Map<Long, State<CorefCluster>> states) {
 		mstates = states;
 	}
     
@@ -88,8 +95,8 @@ public class StructuredPerceptronConsideringBeam implements IClassifier {
 		mWeight = weight;
 	}
 	
-	public void setRightLinks(Set<String> rightLinks){
-		mrightLinks = rightLinks;
+	public void setGoldOracle(GoldOracle goldOracle){
+		mgoldOracle = goldOracle;
 	}
 	
 	public void setStatesLossFunction(PriorityQueue<State<CorefCluster>> statesLossFunction) {
@@ -136,6 +143,7 @@ public class StructuredPerceptronConsideringBeam implements IClassifier {
 	 */
 	public void train() {
 		noOfVilotions = 0;
+		mAveragedWeight.begin(mWeight, mTotalWeight);
 //		boolean exist = existGoodMerge();
 //		if (exist) {
 //			updateWeightForGoodCase();
@@ -164,6 +172,7 @@ public class StructuredPerceptronConsideringBeam implements IClassifier {
 			noOfVilotions++;
 		}
 //		}
+		mAveragedWeight.end();
 		ResultOutput.writeTextFile(ExperimentConstructor.logFile, "No of violated constraints : " + noOfVilotions);
 	}
 	
@@ -174,7 +183,7 @@ public class StructuredPerceptronConsideringBeam implements IClassifier {
 	 * @param badState
 	 */
 	private void outputFeatureFurther(State<CorefCluster> goodState, State<CorefCluster> badState) {
-		String filePath = ExperimentConstructor.currentExperimentFolder + "/" + mSearchStep;
+		String filePath = ExperimentConstructor.getCurrentExperimentFolder() + "/" + mSearchStep;
 		String features = outputFeature(goodState, badState);
 		ResultOutput.writeTextFile(filePath, features);
 	}
@@ -182,61 +191,20 @@ public class StructuredPerceptronConsideringBeam implements IClassifier {
 	/** update in beam case*/ 
 	private void updateWeightBeamCase(List<State<CorefCluster>> beamLists) {
 		List<State<CorefCluster>> unBeamLists = new ArrayList<State<CorefCluster>>();
-		for (String id : mstates.keySet()) {
+		for (Long id : mstates.keySet()) {
 			unBeamLists.add(mstates.get(id));
 		}
 		// first constraint:
-		for (int i = 0; i < beamLists.size(); i++) {
-			State<CorefCluster> beamState = beamLists.get(i);
-			for (int j = 0; j < unBeamLists.size(); j++) {
-				State<CorefCluster> unBeamState = unBeamLists.get(j);
-				
-				if (beamState.getScore()[0] == unBeamState.getScore()[0]) continue;
-				
-				if (beamState.getCostScore() <= unBeamState.getCostScore()) {
-					if (ExperimentConstructor.outputFeature) {
-						outputFeatureFurther(beamState, unBeamState);
-					}
-					
-					updateFature(beamState, unBeamState);
-					noOfVilotions++;
-				}
-			}
-		}
+		updateFature(beamLists, unBeamLists, PairwiseViolations.NOT_LOWER_COST, PairwiseViolations.DIFFERENT_LOSS);
 		
 		// second constraint
-		for (int i = 1; i < beamLists.size(); i++) {
-			State<CorefCluster> beamState = beamLists.get(i);
-			
-			if (beamLists.get(0).getScore()[0] == beamState.getScore()[0]) continue;
-			
-			if ( beamLists.get(0).getCostScore() <= beamState.getCostScore()) {
-				if (ExperimentConstructor.outputFeature) {
-					outputFeatureFurther(beamLists.get(0), beamState);
-				}
-				updateFature(beamLists.get(0), beamState);
-				noOfVilotions++;
-			}
-
-		}
+		updateFature(beamLists.subList(0, 1), beamLists.subList(1, beamLists.size()), PairwiseViolations.NOT_LOWER_COST, PairwiseViolations.DIFFERENT_LOSS);
 	}
 	
 	/** update in greedy case */
 	private void updateWeightGreedyCase(List<State<CorefCluster>> beamLists) {
-		for (String id : mstates.keySet()) {			
-			State<CorefCluster> state = mstates.get(id);
-			
-			if (beamLists.get(0).getScore()[0] == state.getScore()[0]) continue;
-			
-			if ( beamLists.get(0).getCostScore() <= state.getCostScore()) {
-				if (ExperimentConstructor.outputFeature) {
-					outputFeatureFurther(beamLists.get(0), state);
-				}
-				
-				updateFature(beamLists.get(0), state);
-				noOfVilotions++;
-			}
-		}
+		List<State<CorefCluster>> states = new ArrayList<State<CorefCluster>>(mstates.values());
+		updateFature(beamLists.subList(0, 1), states, PairwiseViolations.NOT_LOWER_COST, PairwiseViolations.DIFFERENT_LOSS);
 	}
 	
 	/** 
@@ -263,18 +231,38 @@ public class StructuredPerceptronConsideringBeam implements IClassifier {
 	 * @param bad
 	 */
 	private void updateFature(State<CorefCluster> good, State<CorefCluster> bad) {
-		Counter<String> goodFeature = good.getFeatures();
-		Counter<String> badFeature = bad.getFeatures();
-		double[] weightUpdate = new double[Feature.featuresName.length];
-		for (int i = 0; i < Feature.featuresName.length; i++) {
-			String feature = Feature.featuresName[i];
-			double goodValue = goodFeature.getCount(feature);
-			double badValue = badFeature.getCount(feature);
-			weightUpdate[i] = goodValue - badValue;
+		mAveragedWeight.update(good.getFeatures(), bad.getFeatures());
+	}
+	
+	/**
+	 * update features by the violated pairs of the good states and the bad states, good minus bad
+	 * 
+	 * @param goodStates
+	 * @param badStates
+	 * @param margin
+	 * @param lossRelation
+	 */
+	private void updateFature(List<State<CorefCluster>> goodStates, List<State<CorefCluster>> badStates, PairwiseViolations.Margin margin, int lossRelation) {
+		if (ExperimentConstructor.outputFeature) {
+			for (State<CorefCluster> goodState : goodStates) {
+				for (State<CorefCluster> badState : badStates) {
+					if (PairwiseViolations.isViolated(goodState, badState, margin, lossRelation)) {
+						outputFeatureFurther(goodState, badState);
+					}
+				}
+			}
 		}
 		
-		mWeight = DoubleOperation.add(mWeight, weightUpdate);
-		mTotalWeight = DoubleOperation.add(mTotalWeight, mWeight);
+		if (mUpdate == null) {
+			mUpdate = new double[Feature.featuresName.length];
+			mDelayedUpdate = new double[Feature.featuresName.length];
+		} else {
+			Arrays.fill(mUpdate, 0.0);
+			Arrays.fill(mDelayedUpdate, 0.0);
+		}
+		int violations = PairwiseViolations.aggregateInOrder(goodStates, badStates, margin, lossRelation, mUpdate, mDelayedUpdate);
+		mAveragedWeight.update(mUpdate, mDelayedUpdate, violations);
+		noOfVilotions += violations;
 	}
 	
 	/** if not all bad links, then just need to ensure that the good state should be higher than bad state */
@@ -285,22 +273,7 @@ public class StructuredPerceptronConsideringBeam implements IClassifier {
 		fillGoodBadLinks(existsGood, goodStates, badStates);
 		
 		ResultOutput.writeTextFile(ExperimentConstructor.logFile, "there exists " + goodStates.size() + " good states ");
-		for (int i = 0; i < goodStates.size(); i++) {
-			for (int j = 0; j < badStates.size(); j++) {
-				State<CorefCluster> goodState = goodStates.get(i);
-				State<CorefCluster> badState = badStates.get(j);
-				if (goodState.getCostScore() <= badState.getCostScore()) {
-					
-					// output feature in order for optimize
-					if (ExperimentConstructor.outputFeature) {
-						outputFeatureFurther(goodState, badState);
-					}
-					
-					updateFature(goodState, badState);
-					noOfVilotions++;
-				}
-			}
-		}
+		updateFature(goodStates, badStates, PairwiseViolations.NOT_LOWER_COST, PairwiseViolations.ANY_LOSS);
 	}
 	
 	
@@ -322,46 +295,10 @@ public class StructuredPerceptronConsideringBeam implements IClassifier {
 	
 	/** test whether there exists good links */
 	private boolean[] existGoodMerge(PriorityQueue<State<CorefCluster>> statesLossFunction){
-		boolean[] exists = new boolean[statesLossFunction.size()];
-		for (int i = 0; i < statesLossFunction.getElements().size(); i++) {
-			State<CorefCluster> state = statesLossFunction.getElements().get(i);
-			boolean existsGood = true;
-			Map<Integer, CorefCluster> clusters = state.getState();
-			for (CorefCluster cluster : clusters.values()) {
-				int size = cluster.getCorefMentions().size();
-				if (size == 1) continue;
-				
-				boolean existedOuterFor = false;
-				List<Integer> ids = new ArrayList<Integer>();
-	    		for (Mention mention : cluster.getCorefMentions()) {
-	    			ids.add(mention.mentionID);
-	    		}
-	    		
-	    		for (int k = 0; k < ids.size(); k++) {
-	                int iID = ids.get(k);
-	                boolean existInnerFor = false;
-	                for (int j = 0; j < k; j++) {
-	                	int jID = ids.get(j);
-	                	boolean rightcontians = mrightLinks.contains(iID + "-" + jID);
-	                	boolean reverserightcontians = mrightLinks.contains(jID + "-" + iID);
-	                	
-	                	if (!(rightcontians || reverserightcontians)) {
-	                		existsGood = false;
-	                		existInnerFor = true;
-	                		break;
-	                	}
-	                }
-	                if (existInnerFor) {
-	                	existedOuterFor = true;
-	                	break;
-	                }
-	    		}
-	    		
-	    		if (existedOuterFor) {
-	    			break;
-	    		}
-			}
-			exists[i] = existsGood;	
+		List<State<CorefCluster>> states = statesLossFunction.getElements();
+		boolean[] exists = new boolean[states.size()];
+		for (int i = 0; i < states.size(); i++) {
+			exists[i] = mgoldOracle.isGood(states.get(i));
 		}
 		
 		return exists;
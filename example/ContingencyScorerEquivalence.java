@@ -0,0 +1,80 @@
+package edu.oregonstate.example;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import edu.oregonstate.score.ContingencyScorer;
+import edu.oregonstate.score.ScorerCEAF;
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.dcoref.CorefScorer;
+import edu.stanford.nlp.dcoref.CorefScorer.ScoreType;
+import edu.stanford.nlp.dcoref.Document;
+import edu.stanford.nlp.dcoref.Mention;
+import edu.stanford.nlp.dcoref.ScorerBCubed;
+import edu.stanford.nlp.dcoref.ScorerBCubed.BCubedType;
+import edu.stanford.nlp.dcoref.ScorerMUC;
+import edu.stanford.nlp.dcoref.ScorerPairwise;
+
+/**
+ * check that ContingencyScorer gives the sums of the document scorers, on a document with twinless mentions
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class ContingencyScorerEquivalence {
+
+	public static void main(String[] args) {
+		// response {1 2 6} {3} {4 5} {7}, key {1 2 3} {4 8} {5} {9}: 6 and 7 are only in the response, 8 and 9 only in the key
+		int[][] response = {{1, 2, 6}, {3}, {4, 5}, {7}};
+		int[][] key = {{1, 2, 3}, {4, 8}, {5}, {9}};
+		Document document = new Document();
+		document.allPredictedMentions = new HashMap<Integer, Mention>();
+		document.allGoldMentions = new HashMap<Integer, Mention>();
+		document.corefClusters = clusters(response, document.allPredictedMentions, false);
+		document.goldCorefClusters = clusters(key, document.allGoldMentions, true);
+
+		ContingencyScorer scorer = new ContingencyScorer(document);
+		scorer.score(document.corefClusters);
+		check(scorer, new ScorerPairwise(), ScoreType.Pairwise, document);
+		check(scorer, new ScorerMUC(), ScoreType.MUC, document);
+		check(scorer, new ScorerBCubed(BCubedType.Bconll), ScoreType.BCubed, document);
+		check(scorer, new ScorerCEAF(), ScoreType.CEAF, document);
+		System.out.println("ContingencyScorer gives the sums of the document scorers");
+	}
+
+	/** the clusters of the mention ids, the mentions are added to the mentions of the document */
+	private static Map<Integer, CorefCluster> clusters(int[][] ids, Map<Integer, Mention> mentions, boolean gold) {
+		Map<Integer, CorefCluster> clusters = new HashMap<Integer, CorefCluster>();
+		for (int id = 0; id < ids.length; id++) {
+			Set<Mention> clusterMentions = new HashSet<Mention>();
+			for (int mentionID : ids[id]) {
+				Mention mention = new Mention();
+				mention.mentionID = mentionID;
+				if (gold) {
+					mention.goldCorefClusterID = id;
+				} else {
+					mention.corefClusterID = id;
+				}
+				mentions.put(mentionID, mention);
+				clusterMentions.add(mention);
+			}
+			clusters.put(id, new CorefCluster(id, clusterMentions));
+		}
+		return clusters;
+	}
+
+	/** compare the four sums of the metric */
+	private static void check(ContingencyScorer scorer, CorefScorer expected, ScoreType type, Document document) {
+		expected.calculateScore(document);
+		double[] sums = {expected.precisionNumSum, expected.precisionDenSum, expected.recallNumSum, expected.recallDenSum};
+		double[] actual = {scorer.getPrecisionNumSum(type), scorer.getPrecisionDenSum(type), scorer.getRecallNumSum(type), scorer.getRecallDenSum(type)};
+		for (int i = 0; i < sums.length; i++) {
+			if (Math.abs(sums[i] - actual[i]) > 1e-9) {
+				throw new RuntimeException(type + ": expected " + expected.precisionNumSum + " " + expected.precisionDenSum + " "
+						+ expected.recallNumSum + " " + expected.recallDenSum + ", but " + scorer.getDetailInformation(type));
+			}
+		}
+	}
+}
@@ -11,9 +11,11 @@ import edu.oregonstate.cluster.IClustering;
 import edu.oregonstate.costfunction.ICostFunction;
 import edu.oregonstate.featureExtractor.WordSimilarity;
 import edu.oregonstate.features.Feature;
+import edu.oregonstate.features.FeatureStore;
 import edu.oregonstate.general.DoubleOperation;
 import edu.oregonstate.general.FinalScore;
 import edu.oregonstate.io.ResultOutput;
+import edu.oregonstate.io.ResultStore;
 import edu.oregonstate.lossfunction.ILossFunction;
 import edu.oregonstate.search.ISearch;
 import edu.oregonstate.training.Train;
@@ -86,26 +88,23 @@ public abstract class ExperimentConstructor {
 	/** log file */
 	public static String logFile;
 	
-	/** just output the train and test result, for example pairwise  */
-	public static String mscorePath;
+	/** the scores of the experiment, see {@link #getResultStore()} */
+	public static ResultStore resultStore;
 	
-	/** output the detail information of each score, which can be used to calculate the total performance of all topics */
-	public static String mScoreDetailPath;
+	/** the phase of the scores being produced, for example train, costtrain, validationtrain, test */
+	public static String currentPhase;
+	
+	/** the iteration of the scores being produced, start from 1 */
+	public static int currentIteration;
+	
+	/** the topic of the scores being produced */
+	public static String currentTopic;
 	
 	public static boolean stoppingCriterion;
 	
 	/** score Types */
 	String[] scoreTypes = {"Pairwise", "MUC", "Bcubed", "CEAF"};
 	
-	/** muc detail information */
-	public static String mMUCScoreDetailPath;
-	
-	/** Bcubed detail information */
-	public static String mBcubedScoreDetailPath;
-	
-	/** ceaf detail information */
-	public static String mCEAFScoreDetailPath;
-	
 	/** training topics */
 	protected String[] trainingTopics;
 	
@@ -166,9 +165,22 @@ public abstract class ExperimentConstructor {
 	/**  */
 	public static boolean crossCase;
 	
-	/** print final score */
+	/** the topic searched by the current thread in the parallel training, see {@link ParameterMixing} */
+	private static final ThreadLocal<TopicContext> topicContext = new ThreadLocal<TopicContext>();
+	
+	/** the key of the scores, the folder and whether to update the weight of a topic searched by a worker */
+	private static class TopicContext {
+		String phase;
+		int iteration;
+		String topic;
+		String experimentFolder;
+		boolean updateWeight;
+	}
+	
+	/** print final score, and the text layout of the per-topic scores if textResults is configured */
 	protected void printFinalScore(int iteration) {
-		FinalScore finalScore = new FinalScore(trainingTopics, testingTopics, experimentResultFolder);
+		ResultStore store = getResultStore();
+		FinalScore finalScore = new FinalScore(trainingTopics, testingTopics, experimentResultFolder, store);
 		for (int i = 1; i <= iteration; i++) {
 			for (String scoreType : scoreTypes) {
 				finalScore.set(i);
@@ -176,6 +188,106 @@ public abstract class ExperimentConstructor {
 				finalScore.computePerformance();
 			}
 		}
+		
+		if ((Boolean) getParameter(EecbConstants.DATASET, "textResults", false)) {
+			store.exportText(experimentResultFolder);
+		}
+	}
+	
+	/** the result store of the current experiment folder, opened on the first use */
+	public static synchronized ResultStore getResultStore() {
+		String path = experimentResultFolder + "/results";
+		if (resultStore == null || !resultStore.getPath().equals(path)) {
+			if (resultStore != null) {
+				resultStore.close();
+			}
+			resultStore = new ResultStore(path);
+		}
+		return resultStore;
+	}
+	
+	/**
+	 * the feature store of the topic if featureStore is configured, the features are kept in memory,
+	 * or in the file topic.features under featureStorePath if it is configured
+	 * 
+	 * @param topic
+	 * @return null if the feature store is disabled
+	 */
+	public static FeatureStore getFeatureStore(String topic) {
+		if (!(Boolean) getParameter(EecbConstants.SEARCHMETHOD, "featureStore", false)) {
+			return null;
+		}
+		
+		String folder = (String) getParameter(EecbConstants.SEARCHMETHOD, "featureStorePath", "");
+		return FeatureStore.getStore(topic, folder.isEmpty() ? "" : folder + "/" + topic + ".features");
+	}
+	
+	/**
+	 * the scores produced from now on belong to the phase, iteration and topic
+	 * 
+	 * @param phase
+	 * @param iteration
+	 * @param topic
+	 */
+	protected static void setResultKey(String phase, int iteration, String topic) {
+		currentPhase = phase;
+		currentIteration = iteration;
+		currentTopic = topic;
+	}
+	
+	/**
+	 * the scores, the output and the weight updates of the searches run by the current thread belong to the topic,
+	 * instead of the static fields shared by the experiment
+	 * 
+	 * @param phase
+	 * @param iteration
+	 * @param topic
+	 * @param experimentFolder
+	 * @param update whether the search updates the weight
+	 */
+	static void setTopicContext(String phase, int iteration, String topic, String experimentFolder, boolean update) {
+		TopicContext context = new TopicContext();
+		context.phase = phase;
+		context.iteration = iteration;
+		context.topic = topic;
+		context.experimentFolder = experimentFolder;
+		context.updateWeight = update;
+		topicContext.set(context);
+	}
+	
+	/** the searches of the current thread use the static fields again */
+	static void clearTopicContext() {
+		topicContext.remove();
+	}
+	
+	/** the phase of the scores produced by the current thread */
+	public static String getCurrentPhase() {
+		TopicContext context = topicContext.get();
+		return context == null ? currentPhase : context.phase;
+	}
+	
+	/** the iteration of the scores produced by the current thread */
+	public static int getCurrentIteration() {
+		TopicContext context = topicContext.get();
+		return context == null ? currentIteration : context.iteration;
+	}
+	
+	/** the topic of the scores produced by the current thread */
+	public static String getCurrentTopic() {
+		TopicContext context = topicContext.get();
+		return context == null ? currentTopic : context.topic;
+	}
+	
+	/** the experiment folder of the topic searched by the current thread */
+	public static String getCurrentExperimentFolder() {
+		TopicContext context = topicContext.get();
+		return context == null ? currentExperimentFolder : context.experimentFolder;
+	}
+	
+	/** whether the search run by the current thread updates the weight */
+	public static boolean isUpdateWeight() {
+		TopicContext context = topicContext.get();
+		return context == null ? updateWeight : context.updateWeight;
 	}
 	
 	/** get parameter */
@@ -188,7 +300,17 @@ public abstract class ExperimentConstructor {
 			return mParameters.get(methodKey).get(parameterKey);
 		}
 	}
-	
+
+	/** get parameter, if the parameter is not configured, return the default value */
+	public static Object getParameter(String methodKey, String parameterKey, Object defaultValue) {
+		if (mParameters == null || !mParameters.containsKey(methodKey)) {
+			return defaultValue;
+		}
+
+		Object value = mParameters.get(methodKey).get(parameterKey);
+		return value == null ? defaultValue : value;
+	}
+
 	/** whether debug or run the whole experiment */
 	protected boolean mDebug;
 	
@@ -388,8 +510,6 @@ public abstract class ExperimentConstructor {
 		int totalPredictedMentions = 0;
 		int totalGoalMentions = 0;
 		
-		String corpusStatisticsPath = experimentResultFolder + "/corpusStatisticsPath";
-		
 		if (stanfordExperiment) {
 			Train.currentOutputFileName = linearRegressionTrainingPath + "/initial.csv";
 		}
@@ -416,8 +536,8 @@ public abstract class ExperimentConstructor {
 
 			ResultOutput.writeTextFile(logFile, "number of gold mentions : " + document.allGoldMentions.size());
 			ResultOutput.writeTextFile(logFile, "number of predicted mentions : " + document.allPredictedMentions.size());
-			ResultOutput.writeTextFile(corpusStatisticsPath, topic + " " + document.allGoldMentions.size() + " " + document.goldCorefClusters.size() + " " + document.allPredictedMentions.size() + " " +
-					document.corefClusters.size());
+			getResultStore().append("corpus", topic, 0, 0, ResultStore.STATISTICS, new double[] {document.allGoldMentions.size(), 
+					document.goldCorefClusters.size(), document.allPredictedMentions.size(), document.corefClusters.size()});
 			
 			totalGoalMentions += document.allGoldMentions.size();
 			totalPredictedMentions += document.allPredictedMentions.size();
@@ -441,8 +561,8 @@ public abstract class ExperimentConstructor {
 			ResultOutput.writeTextFile(logFile, "number of gold mentions : " + document.allGoldMentions.size());
 			ResultOutput.writeTextFile(logFile, "number of mentions : " + document.allPredictedMentions.size());
 			
-			ResultOutput.writeTextFile(corpusStatisticsPath, topic + " " + document.allGoldMentions.size() + " " + document.goldCorefClusters.size() + " " + document.allPredictedMentions.size() + " " +
-					document.corefClusters.size());
+			getResultStore().append("corpus", topic, 0, 0, ResultStore.STATISTICS, new double[] {document.allGoldMentions.size(), 
+					document.goldCorefClusters.size(), document.allPredictedMentions.size(), document.corefClusters.size()});
 			totalPredictedMentions += document.allPredictedMentions.size();
 			totalGoalMentions += document.allGoldMentions.size();
 			ResultOutput.serialize(document, topic, serializedOutput);
@@ -453,7 +573,7 @@ public abstract class ExperimentConstructor {
 		
 		ResultOutput.writeTextFile(logFile, "the total number of gold mentions :" + totalGoalMentions );
 		ResultOutput.writeTextFile(logFile, "the total number of predicted mentions :" + totalPredictedMentions );
-		ResultOutput.writeTextFile(corpusStatisticsPath, totalGoalMentions + " " + totalPredictedMentions);
+		getResultStore().append("corpus", "", 0, 0, ResultStore.STATISTICS, new double[] {totalGoalMentions, totalPredictedMentions});
 	}
 	
 	/**
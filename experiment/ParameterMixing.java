@@ -0,0 +1,223 @@
+package edu.oregonstate.experiment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.oregonstate.classifier.SharedWeight;
+import edu.oregonstate.io.ResultOutput;
+import edu.oregonstate.search.ISearch;
+import edu.oregonstate.util.Command;
+import edu.oregonstate.util.EecbConstants;
+import edu.stanford.nlp.dcoref.Document;
+
+/**
+ * topic parallel training by iterative parameter mixing
+ * <p>
+ * The training topics of an iteration are searched at the same time by a worker pool, each from the weight and the
+ * total weight of the start of the iteration. At the end of the iteration, the weights of the topics are mixed:
+ * averaged (mixing = uniform), or weighted by the number of violations of each topic (mixing = violation). The total
+ * weight gets the sum of what each topic added to it, so it stays the sum of the weights after each update and can
+ * be divided by the total number of violations as in the sequential training.
+ * <p>
+ * With mixing = asynchronous (Hogwild), there is nothing to mix: all topics of the iteration share one
+ * {@link SharedWeight}, which each classifier updates in place without locks while the other searches use it.
+ * Its result depends on the timing of the workers, also in the deterministic mode. Only the StochasticGradient
+ * classifiers are accepted: the averaged weight of the structured perceptrons reads the weight at the end of each
+ * update, which the other workers are writing at the same time.
+ * <p>
+ * The classifier parameters are parallelTraining (default false), trainingThreads (default the number of processors),
+ * mixing (default uniform) and deterministic (default false). In the deterministic mode, the weights are mixed in
+ * the order of the topics after all topics are done, so the result does not depend on the order in which the workers
+ * finish; otherwise each topic is mixed in as soon as its search is done.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class ParameterMixing {
+
+	public static final String UNIFORM = "uniform";
+
+	public static final String VIOLATION = "violation";
+
+	public static final String ASYNCHRONOUS = "asynchronous";
+
+	/** the weights of the training search of one topic */
+	private static class TopicResult {
+		double[] weight;
+		double[] totalWeight;
+		int violations;
+	}
+
+	private int mnoOfThreads;
+
+	/** UNIFORM, VIOLATION or ASYNCHRONOUS */
+	private String mmixing;
+
+	private boolean mdeterministic;
+
+	private double[] mweight;
+
+	private double[] mtotalWeight;
+
+	private int mviolations;
+
+	/** sum of the mixed weights of the topics done so far */
+	private double[] mmixedWeight;
+
+	/** sum of the mixing coefficients of the topics done so far */
+	private double mnormalizer;
+
+	public ParameterMixing() {
+		mnoOfThreads = (Integer) ExperimentConstructor.getParameter(EecbConstants.CLASSIFIER, "trainingThreads", Runtime.getRuntime().availableProcessors());
+		mmixing = (String) ExperimentConstructor.getParameter(EecbConstants.CLASSIFIER, "mixing", UNIFORM);
+		mdeterministic = (Boolean) ExperimentConstructor.getParameter(EecbConstants.CLASSIFIER, "deterministic", false);
+		if (!mmixing.equals(UNIFORM) && !mmixing.equals(VIOLATION) && !mmixing.equals(ASYNCHRONOUS)) {
+			throw new RuntimeException("unknown mixing " + mmixing);
+		}
+		String classifier = (String) ExperimentConstructor.getParameter(EecbConstants.CLASSIFIER, "model");
+		if (mmixing.equals(ASYNCHRONOUS) && !classifier.startsWith("StochasticGradient")) {
+			throw new RuntimeException("asynchronous mixing only supports the StochasticGradient classifiers, not " + classifier);
+		}
+	}
+
+	/** whether the training topics are searched in parallel */
+	public static boolean isEnabled() {
+		return (Boolean) ExperimentConstructor.getParameter(EecbConstants.CLASSIFIER, "parallelTraining", false);
+	}
+
+	/**
+	 * do the training search on the topics of the iteration in parallel and mix their weights
+	 *
+	 * @param topics
+	 * @param iteration start from 1
+	 * @param weight the weight of the start of the iteration
+	 * @param totalWeight the total weight of the start of the iteration
+	 */
+	public void train(String[] topics, final int iteration, final double[] weight, final double[] totalWeight) {
+		mweight = weight;
+		mtotalWeight = totalWeight.clone();
+		mviolations = 0;
+		mmixedWeight = new double[weight.length];
+		mnormalizer = 0.0;
+
+		final boolean update = ExperimentConstructor.updateWeight;
+		final SharedWeight shared = mmixing.equals(ASYNCHRONOUS) ? new SharedWeight(weight, totalWeight) : null;
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(mnoOfThreads, topics.length)));
+		try {
+			CompletionService<TopicResult> completion = new ExecutorCompletionService<TopicResult>(pool);
+			List<Future<TopicResult>> futures = new ArrayList<Future<TopicResult>>();
+			for (final String topic : topics) {
+				futures.add(completion.submit(new Callable<TopicResult>() {
+					public TopicResult call() {
+						return search(topic, iteration, weight, totalWeight, shared, update);
+					}
+				}));
+			}
+
+			if (mdeterministic) {
+				for (Future<TopicResult> future : futures) {
+					mix(future.get(), totalWeight);
+				}
+			} else {
+				for (int i = 0; i < topics.length; i++) {
+					mix(completion.take().get(), totalWeight);
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		if (shared != null) {
+			mweight = shared.getWeight();
+			mtotalWeight = shared.getTotalWeight();
+		} else if (mnormalizer > 0.0) {
+			// with the violation mixing, the weight stays if no topic violated any constraint
+			for (int i = 0; i < mmixedWeight.length; i++) {
+				mmixedWeight[i] /= mnormalizer;
+			}
+			mweight = mmixedWeight;
+		}
+		ResultOutput.writeTextFile(ExperimentConstructor.logFile, "mixed the weights of " + topics.length + " topics (" + mmixing + ")");
+	}
+
+	/** add the weights of the topic to the mixture */
+	private void mix(TopicResult result, double[] totalWeight) {
+		mviolations += result.violations;
+		if (mmixing.equals(ASYNCHRONOUS)) return;
+
+		double coefficient = mmixing.equals(VIOLATION) ? result.violations : 1.0;
+		for (int i = 0; i < mmixedWeight.length; i++) {
+			mmixedWeight[i] += coefficient * result.weight[i];
+			mtotalWeight[i] += result.totalWeight[i] - totalWeight[i];
+		}
+		mnormalizer += coefficient;
+	}
+
+	/** the training search of the topic from copies of the weights, or on the shared weight if it is not null */
+	private TopicResult search(String topic, int iteration, double[] weight, double[] totalWeight, SharedWeight shared, boolean update) {
+		ResultOutput.writeTextFile(ExperimentConstructor.logFile, "Starting to do training on " + topic);
+		Document document = ResultOutput.deserialize(topic, ExperimentConstructor.serializedOutput, false);
+
+		// before search parameters
+		ResultOutput.writeTextFile(ExperimentConstructor.logFile, "topic " + topic + "'s detail before search");
+		ExperimentConstructor.printParameters(document, topic);
+
+		// configure dynamic folder path and the key of the scores of this thread
+		String experimentFolder = ExperimentConstructor.experimentResultFolder + "/" + topic;
+		Command.createDirectory(experimentFolder);
+		ExperimentConstructor.setTopicContext("train", iteration, topic, experimentFolder, update);
+		try {
+			// use search to update weight
+			ISearch searchMethod = ExperimentConstructor.createSearchMethod((String) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "model"));
+			if (shared == null) {
+				searchMethod.setWeight(weight.clone());
+				searchMethod.setTotalWeight(totalWeight.clone());
+			} else {
+				searchMethod.setWeight(shared.getWeight());
+				searchMethod.setTotalWeight(shared.getTotalWeight());
+			}
+			searchMethod.setDocument(document);
+			searchMethod.trainingSearch();
+			if (shared != null && !shared.isShared(searchMethod.getWeight(), searchMethod.getTotalWeight())) {
+				throw new RuntimeException("the classifier of topic " + topic + " does not update the shared weight in place");
+			}
+
+			TopicResult result = new TopicResult();
+			result.weight = searchMethod.getWeight();
+			result.totalWeight = searchMethod.getTotalWeight();
+			result.violations = searchMethod.getViolations();
+
+			// after search parameters
+			ResultOutput.writeTextFile(ExperimentConstructor.logFile, "topic " + topic + "'s detail after search");
+			ExperimentConstructor.printParameters(document, topic);
+			return result;
+		} finally {
+			ExperimentConstructor.clearTopicContext();
+		}
+	}
+
+	/** the mixed weight */
+	public double[] getWeight() {
+		return mweight;
+	}
+
+	public double[] getTotalWeight() {
+		return mtotalWeight;
+	}
+
+	/** the number of violations of all topics */
+	public int getViolations() {
+		return mviolations;
+	}
+}
@@ -5,6 +5,7 @@ import java.util.Calendar;
 import java.util.List;
 
 import edu.oregonstate.experiment.ExperimentConstructor;
+import edu.oregonstate.experiment.ParameterMixing;
 import edu.oregonstate.features.Feature;
 import edu.oregonstate.general.DoubleOperation;
 import edu.oregonstate.io.ResultOutput;
@@ -61,35 +62,43 @@ public class CrossCoreferenceResolutionStochasticGradientGoldLatestWeight extend
 				int mviolations = 0;
 				
 				// training part
-				for (int j = 0; j < trainingTopics.length; j++) {
+				if (ParameterMixing.isEnabled()) {
 					updateWeight = true;
-					String topic = trainingTopics[j];
-					ResultOutput.writeTextFile(logFile, "Starting to do training on " + topic);
-					Document document = ResultOutput.deserialize(topic, serializedOutput, false);
+					ParameterMixing mixing = new ParameterMixing();
+					mixing.train(trainingTopics, i + 1, weight, totalWeight);
+					weight = mixing.getWeight();
+					totalWeight = mixing.getTotalWeight();
+					mviolations += mixing.getViolations();
+				} else {
+					for (int j = 0; j < trainingTopics.length; j++) {
+						updateWeight = true;
+						String topic = trainingTopics[j];
+						ResultOutput.writeTextFile(logFile, "Starting to do training on " + topic);
+						Document document = ResultOutput.deserialize(topic, serializedOutput, false);
 					
-					// before search parameters
-					ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail before search");
-					printParameters(document, topic);
+						// before search parameters
+						ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail before search");
+						printParameters(document, topic);
 					
-					// configure dynamic file and folder path
-					currentExperimentFolder = experimentResultFolder + "/" + topic;
-					Command.createDirectory(currentExperimentFolder);
-					mscorePath = currentExperimentFolder + "/" + "train-iteration" + (i + 1) + "-" + topic;
-					mScoreDetailPath = currentExperimentFolder + "/" + "train-iteration" + (i + 1) + "-" + topic + "-scoredetail";
+						// configure dynamic folder path and the key of the scores
+						currentExperimentFolder = experimentResultFolder + "/" + topic;
+						Command.createDirectory(currentExperimentFolder);
+						setResultKey("train", i + 1, topic);
 					
-					// use search to update weight
-					ISearch mSearchMethod = createSearchMethod((String) getParameter(EecbConstants.SEARCHMETHOD, "model"));
-					mSearchMethod.setWeight(weight);
-					mSearchMethod.setTotalWeight(totalWeight);
-					mSearchMethod.setDocument(document);
-					mSearchMethod.trainingSearch();
-					weight = mSearchMethod.getWeight();
-					totalWeight = mSearchMethod.getTotalWeight();
-					mviolations += mSearchMethod.getViolations();
+						// use search to update weight
+						ISearch mSearchMethod = createSearchMethod((String) getParameter(EecbConstants.SEARCHMETHOD, "model"));
+						mSearchMethod.setWeight(weight);
+						mSearchMethod.setTotalWeight(totalWeight);
+						mSearchMethod.setDocument(document);
+						mSearchMethod.trainingSearch();
+						weight = mSearchMethod.getWeight();
+						totalWeight = mSearchMethod.getTotalWeight();
+						mviolations += mSearchMethod.getViolations();
 					
-					// after search parameters
-					ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail after search");
-					printParameters(document, topic);
+						// after search parameters
+						ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail after search");
+						printParameters(document, topic);
+					}
 				}
 					
 				// print weight information
@@ -101,7 +110,7 @@ public class CrossCoreferenceResolutionStochasticGradientGoldLatestWeight extend
 				double[] averageWeight = DoubleOperation.divide(totalWeight, mTotalViolations);
 				ResultOutput.writeTextFile(logFile, "average weight vector : " + DoubleOperation.printArray(averageWeight));
 				ResultOutput.writeTextFile(logFile, "\n");
-				weights.add(weight);
+				weights.add(weight.clone());
 				
 				// training validation part
 				for (int j = 0; j < trainingTopics.length; j++) {
@@ -114,14 +123,10 @@ public class CrossCoreferenceResolutionStochasticGradientGoldLatestWeight extend
 					ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail before search");
 					printParameters(document, topic);
 					
-					// configure dynamic file and folder path
+					// configure dynamic folder path and the key of the scores
 					currentExperimentFolder = experimentResultFolder + "/" + topic;
 					Command.createDirectory(currentExperimentFolder);
-					mscorePath = currentExperimentFolder + "/" + "validationtrain-iteration" + (i + 1) + "-" + topic;
-					mScoreDetailPath = currentExperimentFolder + "/" + "validationtrain-iteration" + (i + 1) + "-" + topic + "-scoredetail";
-					mMUCScoreDetailPath = currentExperimentFolder + "/MUC-" + "validationtrain-iteration" + (i + 1) + "-" + topic + "-scoredetail";
-					mBcubedScoreDetailPath = currentExperimentFolder + "/Bcubed-" + "validationtrain-iteration" + (i + 1) + "-" + topic + "-scoredetail";
-					mCEAFScoreDetailPath = currentExperimentFolder + "/CEAF-" + "validationtrain-iteration" + (i + 1) + "-" + topic + "-scoredetail";
+					setResultKey("validationtrain", i + 1, topic);
 					
 					// use search to update weight
 					ISearch mSearchMethod = createSearchMethod((String) getParameter(EecbConstants.SEARCHMETHOD, "model"));
@@ -145,14 +150,10 @@ public class CrossCoreferenceResolutionStochasticGradientGoldLatestWeight extend
 					ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail before search");
 					printParameters(document, topic);
 					
-					// configure dynamic file and folder path
+					// configure dynamic folder path and the key of the scores
 					currentExperimentFolder = experimentResultFolder + "/" + topic;
 					Command.createDirectory(currentExperimentFolder);
-					mscorePath = currentExperimentFolder + "/" + "test-iteration" + (i + 1) + "-" + topic;
-					mScoreDetailPath = currentExperimentFolder + "/Pairwise-" + "test-iteration" + (i + 1) + "-" + topic + "-scoredetail";
-					mMUCScoreDetailPath = currentExperimentFolder + "/MUC-" + "test-iteration" + (i + 1) + "-" + topic + "-scoredetail";
-					mBcubedScoreDetailPath = currentExperimentFolder + "/Bcubed-" + "test-iteration" + (i + 1) + "-" + topic + "-scoredetail";
-					mCEAFScoreDetailPath = currentExperimentFolder + "/CEAF-" + "test-iteration" + (i + 1) + "-" + topic + "-scoredetail";
+					setResultKey("test", i + 1, topic);
 					
 					// use search to do testing
 					ISearch mSearchMethod = createSearchMethod((String) getParameter(EecbConstants.SEARCHMETHOD, "model"));
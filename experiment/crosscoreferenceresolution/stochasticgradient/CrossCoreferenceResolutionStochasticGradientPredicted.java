@@ -66,11 +66,10 @@ public class CrossCoreferenceResolutionStochasticGradientPredicted extends Exper
 					ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail before search");
 					printParameters(document, topic);
 					
-					// configure dynamic file and folder path
+					// configure dynamic folder path and the key of the scores
 					currentExperimentFolder = experimentResultFolder + "/" + topic;
 					Command.createDirectory(currentExperimentFolder);
-					mscorePath = currentExperimentFolder + "/" + "train-iteration" + (i + 1) + "-" + topic;
-					mScoreDetailPath = currentExperimentFolder + "/" + "train-iteration" + (i + 1) + "-" + topic + "-scoredetail";
+					setResultKey("train", i + 1, topic);
 					
 					// write all the information out
 					ISearch mSearchMethod = createSearchMethod((String) getParameter(EecbConstants.SEARCHMETHOD, "model"));
@@ -114,11 +113,10 @@ public class CrossCoreferenceResolutionStochasticGradientPredicted extends Exper
 					ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail before search");
 					printParameters(document, topic);
 					
-					// configure dynamic file and folder path
+					// configure dynamic folder path and the key of the scores
 					currentExperimentFolder = experimentResultFolder + "/" + topic;
 					Command.createDirectory(currentExperimentFolder);
-					mscorePath = currentExperimentFolder + "/" + "test-iteration" + (i + 1) + "-" + topic;
-					mScoreDetailPath = currentExperimentFolder + "/" + "test-iteration" + (i + 1) + "-" + topic + "-scoredetail";
+					setResultKey("test", i + 1, topic);
 					
 					// use search to do testing
 					ISearch mSearchMethod = createSearchMethod((String) getParameter(EecbConstants.SEARCHMETHOD, "model"));
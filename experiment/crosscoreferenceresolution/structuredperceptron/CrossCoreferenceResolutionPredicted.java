@@ -3,6 +3,7 @@ package edu.oregonstate.experiment.crosscoreferenceresolution.structuredperceptr
 import java.util.*;
 
 import edu.oregonstate.experiment.ExperimentConstructor;
+import edu.oregonstate.experiment.ParameterMixing;
 import edu.oregonstate.features.Feature;
 import edu.oregonstate.general.DoubleOperation;
 import edu.oregonstate.io.ResultOutput;
@@ -51,34 +52,41 @@ public class CrossCoreferenceResolutionPredicted extends ExperimentConstructor {
 				ResultOutput.writeTextFile(logFile, "The " + i + "th iteration....");
 				
 				// training part
-				for (int j = 0; j < trainingTopics.length; j++) {
-					String topic = trainingTopics[j];
-					ResultOutput.writeTextFile(logFile, "Starting to do training on " + topic);
-					Document document = ResultOutput.deserialize(topic, serializedOutput, false);
+				if (ParameterMixing.isEnabled()) {
+					ParameterMixing mixing = new ParameterMixing();
+					mixing.train(trainingTopics, i + 1, weight, totalWeight);
+					weight = mixing.getWeight();
+					totalWeight = mixing.getTotalWeight();
+					mviolations += mixing.getViolations();
+				} else {
+					for (int j = 0; j < trainingTopics.length; j++) {
+						String topic = trainingTopics[j];
+						ResultOutput.writeTextFile(logFile, "Starting to do training on " + topic);
+						Document document = ResultOutput.deserialize(topic, serializedOutput, false);
 					
-					// before search parameters
-					ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail before search");
-					printParameters(document, topic);
+						// before search parameters
+						ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail before search");
+						printParameters(document, topic);
 					
-					// configure dynamic file and folder path
-					currentExperimentFolder = experimentResultFolder + "/" + topic;
-					Command.createDirectory(currentExperimentFolder);
-					mscorePath = currentExperimentFolder + "/" + "train-iteration" + (i + 1) + "-" + topic;
-					mScoreDetailPath = currentExperimentFolder + "/" + "train-iteration" + (i + 1) + "-" + topic + "-scoredetail";
+						// configure dynamic folder path and the key of the scores
+						currentExperimentFolder = experimentResultFolder + "/" + topic;
+						Command.createDirectory(currentExperimentFolder);
+						setResultKey("train", i + 1, topic);
 					
-					// use search to update weight
-					ISearch mSearchMethod = createSearchMethod((String) getParameter(EecbConstants.SEARCHMETHOD, "model"));
-					mSearchMethod.setWeight(weight);
-					mSearchMethod.setTotalWeight(totalWeight);
-					mSearchMethod.setDocument(document);
-					mSearchMethod.trainingSearch();
-					weight = mSearchMethod.getWeight();
-					totalWeight = mSearchMethod.getTotalWeight();
-					mviolations += mSearchMethod.getViolations();
+						// use search to update weight
+						ISearch mSearchMethod = createSearchMethod((String) getParameter(EecbConstants.SEARCHMETHOD, "model"));
+						mSearchMethod.setWeight(weight);
+						mSearchMethod.setTotalWeight(totalWeight);
+						mSearchMethod.setDocument(document);
+						mSearchMethod.trainingSearch();
+						weight = mSearchMethod.getWeight();
+						totalWeight = mSearchMethod.getTotalWeight();
+						mviolations += mSearchMethod.getViolations();
 					
-					// after search parameters
-					ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail after search");
-					printParameters(document, topic);
+						// after search parameters
+						ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail after search");
+						printParameters(document, topic);
+					}
 				}
 					
 				// print weight information
@@ -99,11 +107,10 @@ public class CrossCoreferenceResolutionPredicted extends ExperimentConstructor {
 					ResultOutput.writeTextFile(logFile, "topic " + topic + "'s detail before search");
 					printParameters(document, topic);
 					
-					// configure dynamic file and folder path
+					// configure dynamic folder path and the key of the scores
 					currentExperimentFolder = experimentResultFolder + "/" + topic;
 					Command.createDirectory(currentExperimentFolder);
-					mscorePath = currentExperimentFolder + "/" + "test-iteration" + (i + 1) + "-" + topic;
-					mScoreDetailPath = currentExperimentFolder + "/" + "test-iteration" + (i + 1) + "-" + topic + "-scoredetail";
+					setResultKey("test", i + 1, topic);
 					
 					// use search to do testing
 					ISearch mSearchMethod = createSearchMethod((String) getParameter(EecbConstants.SEARCHMETHOD, "model"));
@@ -0,0 +1,218 @@
+package edu.oregonstate.features;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.dcoref.Dictionaries;
+import edu.stanford.nlp.dcoref.Document;
+import edu.stanford.nlp.dcoref.Mention;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * cache the cluster pair features produced by {@link Feature#getFeatures} during one search
+ * <p>
+ * Each row is keyed by the content of a cluster (its sorted mention ids) and its SRL context, so a
+ * pair of clusters which survives a merge unchanged will not be extracted again in the next search
+ * step. After a state is expanded, the rows of clusters which do not exist in that state any more
+ * (the two merged clusters, and the clusters whose SRL context changed) are invalidated.
+ * <p>
+ * <b>NOTE</b> the SRL features of a pair (SRLROLES-*, SRLPRED-*, SRLAGREECOUNT) are computed from the
+ * SRL entries of the centroids, which depend on the clusters of the SRL arguments and predicates of the
+ * mentions, not only on the mentions of the two clusters. After {@link CorefCluster#regenerateFeature},
+ * a cluster whose arguments were merged has a different SRL context, so its pairs miss the cache.
+ * The cache can be shared by the worker threads of a parallel search, the features are extracted
+ * outside of the lock. If a {@link FeatureStore} is set, the pairs which are not in the cache are
+ * looked up in the store before they are extracted.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class ClusterPairFeatureCache {
+
+	/** cluster signature -> (other cluster signature -> features) */
+	private Map<String, Map<String, Counter<String>>> mrows;
+
+	/** number of lookups answered by the cache */
+	private int mhits;
+
+	/** number of lookups which need feature extraction */
+	private int mmisses;
+
+	/** the features of the pairs seen by the earlier searches, null if there is no store */
+	private FeatureStore mstore;
+
+	public ClusterPairFeatureCache() {
+		mrows = new HashMap<String, Map<String, Counter<String>>>();
+		mhits = 0;
+		mmisses = 0;
+	}
+
+	public int getHits() {
+		return mhits;
+	}
+
+	public int getMisses() {
+		return mmisses;
+	}
+
+	public void setStore(FeatureStore store) {
+		mstore = store;
+	}
+
+	/** the content of the cluster, sorted mention ids, and its SRL context */
+	public static String signature(CorefCluster cluster) {
+		List<Integer> ids = new ArrayList<Integer>();
+		for (Mention mention : cluster.getCorefMentions()) {
+			ids.add(mention.mentionID);
+		}
+		Collections.sort(ids);
+
+		StringBuilder sb = new StringBuilder();
+		for (Integer id : ids) {
+			sb.append(id);
+			sb.append(" ");
+		}
+		sb.append(srlContext(cluster));
+		return sb.toString();
+	}
+
+	/**
+	 * the SRL entries of the predicted and the gold centroids of the cluster, which change when the
+	 * clusters of its SRL arguments or predicates are merged
+	 *
+	 * @param cluster
+	 * @return
+	 */
+	public static String srlContext(CorefCluster cluster) {
+		StringBuilder sb = new StringBuilder();
+		appendSRLEntries(sb, cluster.predictedCentroid);
+		sb.append("|");
+		appendSRLEntries(sb, cluster.goldCentroid);
+		return sb.toString();
+	}
+
+	/** append the sorted SRL entries of the centroid */
+	private static void appendSRLEntries(StringBuilder sb, Map<String, ClassicCounter<String>> centroid) {
+		if (centroid == null) return;
+
+		List<String> features = new ArrayList<String>();
+		for (String feature : centroid.keySet()) {
+			if (feature.startsWith("SRL")) {
+				features.add(feature);
+			}
+		}
+		Collections.sort(features);
+
+		for (String feature : features) {
+			ClassicCounter<String> counter = centroid.get(feature);
+			List<String> values = new ArrayList<String>(counter.keySet());
+			Collections.sort(values);
+			sb.append(feature);
+			sb.append("{");
+			for (String value : values) {
+				sb.append(value);
+				sb.append("=");
+				sb.append(counter.getCount(value));
+				sb.append(",");
+			}
+			sb.append("}");
+		}
+	}
+
+	/**
+	 * get the features of the cluster pair, extract them if the pair has not been seen
+	 *
+	 * @param document
+	 * @param c1
+	 * @param c2
+	 * @param gold
+	 * @param dict
+	 * @return
+	 */
+	public Counter<String> getFeatures(Document document, CorefCluster c1, CorefCluster c2, boolean gold, Dictionaries dict) {
+		String signature1 = signature(c1);
+		String signature2 = signature(c2);
+		synchronized (this) {
+			Map<String, Counter<String>> row = mrows.get(signature1);
+			if (row != null && row.containsKey(signature2)) {
+				mhits++;
+				return row.get(signature2);
+			}
+			mmisses++;
+		}
+
+		Counter<String> features = mstore == null ? Feature.getFeatures(document, c1, c2, gold, dict) : mstore.getFeatures(document, c1, c2, gold, dict);
+		synchronized (this) {
+			put(signature1, signature2, features);
+			put(signature2, signature1, features);
+		}
+		return features;
+	}
+
+	/** put the features into the row */
+	private void put(String rowSignature, String columnSignature, Counter<String> features) {
+		Map<String, Counter<String>> row = mrows.get(rowSignature);
+		if (row == null) {
+			row = new HashMap<String, Counter<String>>();
+			mrows.put(rowSignature, row);
+		}
+		row.put(columnSignature, features);
+	}
+
+	/** invalidate the row of the cluster and its entries in the other rows */
+	public synchronized void invalidate(String signature) {
+		Map<String, Counter<String>> row = mrows.remove(signature);
+		if (row == null) return;
+
+		for (String other : row.keySet()) {
+			Map<String, Counter<String>> otherRow = mrows.get(other);
+			if (otherRow != null) {
+				otherRow.remove(signature);
+			}
+		}
+	}
+
+	/**
+	 * keep the rows of the clusters in the expanded state, the rows of the clusters
+	 * which have been merged away or whose SRL context changed are invalidated
+	 *
+	 * @param clusters
+	 */
+	public synchronized void retain(Collection<CorefCluster> clusters) {
+		Set<String> signatures = new HashSet<String>();
+		for (CorefCluster cluster : clusters) {
+			signatures.add(signature(cluster));
+		}
+
+		List<String> removed = new ArrayList<String>();
+		for (String signature : mrows.keySet()) {
+			if (!signatures.contains(signature)) {
+				removed.add(signature);
+			}
+		}
+
+		for (String signature : removed) {
+			invalidate(signature);
+		}
+	}
+
+	/** clear the cache */
+	public synchronized void clear() {
+		mrows.clear();
+	}
+
+	/** hit rate information, for the log file */
+	public synchronized String statistics() {
+		int total = mhits + mmisses;
+		double rate = total == 0 ? 0.0 : (double) mhits / total;
+		return "feature cache hits : " + mhits + ", misses : " + mmisses + ", hit rate : " + rate;
+	}
+}
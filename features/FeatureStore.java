@@ -0,0 +1,299 @@
+package edu.oregonstate.features;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.oregonstate.search.PartitionHash;
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.dcoref.Dictionaries;
+import edu.stanford.nlp.dcoref.Document;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * store of the cluster pair features of one topic, shared by the searches of all training iterations
+ * <p>
+ * The pair features produced by {@link Feature#getFeatures} do not depend on the weight, but the training
+ * runs the same topics for noOfIteration passes, and each pass extracts the same pairs again. The features
+ * are keyed by the content of the two clusters ({@link PartitionHash#clusterHash}) and their SRL context
+ * ({@link ClusterPairFeatureCache#srlContext}), so they do not depend on the cluster ids, and a pair whose
+ * SRL arguments have been merged differently gets a different key. Without a backing file, the features are
+ * kept in memory. With a backing file, the features are appended to a memory-mapped file as a vector over
+ * {@link Feature#featuresName}, and only the offsets are kept in memory, and an existing file is loaded when
+ * the store is opened, so the features can be reused by a later experiment on the same topic. A backing file
+ * written with a different format or a different number of features is truncated when it is opened.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class FeatureStore {
+
+	/** topic -> store */
+	private static Map<String, FeatureStore> stores = new HashMap<String, FeatureStore>();
+
+	/** the size of the header of the backing file, the format and the number of features */
+	private static final int HEADER = 8;
+
+	/** the format of the backing file, changed whenever the key changes */
+	private static final int FORMAT = 0x46530002;
+
+	/** the initial size of the mapped region */
+	private static final int INITIAL_SIZE = 1 << 20;
+
+	/** backing file path, empty if the features are kept in memory */
+	private final String mpath;
+
+	/** key -> features, if the features are kept in memory */
+	private Map<Long, Counter<String>> mfeatures;
+
+	/** key -> offset of the features in the backing file */
+	private Map<Long, Integer> moffsets;
+
+	private RandomAccessFile mfile;
+
+	private MappedByteBuffer mbuffer;
+
+	/** the end of the records in the backing file */
+	private int mend;
+
+	/** the size of a record, the key and the feature values */
+	private final int mrecordSize;
+
+	private long mhits;
+	private long mmisses;
+
+	/**
+	 * @param path the backing file, empty or null to keep the features in memory
+	 */
+	public FeatureStore(String path) {
+		mpath = path == null ? "" : path;
+		mrecordSize = 8 + 8 * Feature.featuresName.length;
+		if (mpath.isEmpty()) {
+			mfeatures = new HashMap<Long, Counter<String>>();
+		} else {
+			moffsets = new HashMap<Long, Integer>();
+			open();
+		}
+	}
+
+	/**
+	 * the store of the topic, created on the first call. A call with a different backing
+	 * file replaces the store of the topic
+	 *
+	 * @param topic
+	 * @param path
+	 * @return
+	 */
+	public static synchronized FeatureStore getStore(String topic, String path) {
+		String backing = path == null ? "" : path;
+		FeatureStore store = stores.get(topic);
+		if (store == null || !store.mpath.equals(backing)) {
+			if (store != null) {
+				store.close();
+			}
+			store = new FeatureStore(backing);
+			stores.put(topic, store);
+		}
+		return store;
+	}
+
+	/** the key of the cluster pair, which does not depend on the order of the two clusters */
+	public static long key(CorefCluster c1, CorefCluster c2, boolean gold) {
+		long h1 = contentHash(c1);
+		long h2 = contentHash(c2);
+		long z = Math.min(h1, h2) * 0x9E3779B97F4A7C15L + Math.max(h1, h2);
+		if (gold) {
+			z = ~z;
+		}
+		return mix(z);
+	}
+
+	/** the hash of the mentions and the SRL context of the cluster */
+	private static long contentHash(CorefCluster cluster) {
+		// 64 bit FNV-1a of the SRL context
+		long context = 0xCBF29CE484222325L;
+		String srlContext = ClusterPairFeatureCache.srlContext(cluster);
+		for (int i = 0; i < srlContext.length(); i++) {
+			context ^= srlContext.charAt(i);
+			context *= 0x100000001B3L;
+		}
+		return PartitionHash.clusterHash(cluster) ^ mix(context);
+	}
+
+	/** SplitMix64 finalizer */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * get the features of the cluster pair, extract them if the pair has not been stored
+	 *
+	 * @param document
+	 * @param c1
+	 * @param c2
+	 * @param gold
+	 * @param dict
+	 * @return
+	 */
+	public Counter<String> getFeatures(Document document, CorefCluster c1, CorefCluster c2, boolean gold, Dictionaries dict) {
+		long key = key(c1, c2, gold);
+		Counter<String> features = get(key);
+		if (features != null) {
+			return features;
+		}
+
+		features = Feature.getFeatures(document, c1, c2, gold, dict);
+		put(key, features);
+		return features;
+	}
+
+	/**
+	 * the stored features of the key
+	 *
+	 * @param key
+	 * @return null if the features have not been stored
+	 */
+	public synchronized Counter<String> get(long key) {
+		if (mfeatures != null) {
+			Counter<String> features = mfeatures.get(key);
+			if (features == null) {
+				mmisses++;
+			} else {
+				mhits++;
+			}
+			return features;
+		}
+
+		Integer offset = moffsets.get(key);
+		if (offset == null) {
+			mmisses++;
+			return null;
+		}
+		mhits++;
+		return read(offset);
+	}
+
+	/** store the features of the key */
+	public synchronized void put(long key, Counter<String> features) {
+		if (mfeatures != null) {
+			mfeatures.put(key, features);
+			return;
+		}
+
+		if (moffsets.containsKey(key)) return;
+		ensureCapacity(mend + mrecordSize);
+		mbuffer.putLong(mend, key);
+		for (int i = 0; i < Feature.featuresName.length; i++) {
+			mbuffer.putDouble(mend + 8 + 8 * i, features.getCount(Feature.featuresName[i]));
+		}
+		moffsets.put(key, mend);
+		mend += mrecordSize;
+	}
+
+	/** open the backing file, and load the offsets of its records, or truncate it if its header does not match */
+	private void open() {
+		try {
+			File file = new File(mpath);
+			mfile = new RandomAccessFile(file, "rw");
+			int length = (int) mfile.length();
+			boolean matches = false;
+			if (length >= HEADER) {
+				mfile.seek(0);
+				matches = mfile.readInt() == FORMAT && mfile.readInt() == Feature.featuresName.length;
+			}
+			if (!matches) {
+				mfile.setLength(0);
+				length = 0;
+			}
+
+			map(Math.max(length, INITIAL_SIZE));
+			mend = HEADER;
+			if (matches) {
+				while (mend + mrecordSize <= length) {
+					long key = mbuffer.getLong(mend);
+					if (key == 0L && isEmpty(mend)) break;
+					moffsets.put(key, mend);
+					mend += mrecordSize;
+				}
+			} else {
+				mbuffer.putInt(0, FORMAT);
+				mbuffer.putInt(4, Feature.featuresName.length);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** whether the record at the offset has never been written, the mapped region is zero filled */
+	private boolean isEmpty(int offset) {
+		for (int i = 0; i < mrecordSize; i += 8) {
+			if (mbuffer.getLong(offset + i) != 0L) return false;
+		}
+		return true;
+	}
+
+	/** map the first size bytes of the backing file */
+	private void map(int size) throws IOException {
+		mbuffer = mfile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	/** grow the mapped region so that it contains the first size bytes */
+	private void ensureCapacity(int size) {
+		if (size <= mbuffer.capacity()) return;
+		int capacity = mbuffer.capacity();
+		while (capacity < size) {
+			if (capacity > Integer.MAX_VALUE / 2) {
+				throw new RuntimeException("the feature store " + mpath + " is full");
+			}
+			capacity *= 2;
+		}
+		try {
+			mbuffer.force();
+			map(capacity);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** read the features of the record at the offset */
+	private Counter<String> read(int offset) {
+		Counter<String> features = new ClassicCounter<String>();
+		for (int i = 0; i < Feature.featuresName.length; i++) {
+			double value = mbuffer.getDouble(offset + 8 + 8 * i);
+			if (value != 0.0) {
+				features.setCount(Feature.featuresName[i], value);
+			}
+		}
+		return features;
+	}
+
+	/** number of stored pairs */
+	public synchronized int size() {
+		return mfeatures != null ? mfeatures.size() : moffsets.size();
+	}
+
+	public synchronized void close() {
+		if (mfile == null) return;
+		try {
+			mbuffer.force();
+			mfile.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		mfile = null;
+	}
+
+	/** hit rate information, for the log file */
+	public synchronized String statistics() {
+		long total = mhits + mmisses;
+		double rate = total == 0 ? 0.0 : (double) mhits / total;
+		return "feature store hits : " + mhits + ", misses : " + mmisses + ", hit rate : " + rate + ", pairs : " + size();
+	}
+}
@@ -1,12 +1,14 @@
 package edu.oregonstate.general;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+
+import edu.oregonstate.io.TraceReader;
+import edu.oregonstate.io.TraceWriter;
 
 /**
  * For EECB corpus, we need to do cross coreference resolution task. There are two steps:
@@ -17,84 +19,75 @@ import java.util.List;
  * of all within coreference resolution, we average the result.
  * 
  * There are cases, all scores all zero, we remove this kind of instance. Meanwhile, we also remove the other loss scores.
+ * The per step scores of the searches are read from the search trace of the experiment, and the searches
+ * are grouped by the loss type which guides them.
  * 
  * @author Jun Xie (xie@eecs.oregonstate.edu)
  *
  */
 public class AverageAnytimeDataCollection {
 	
-	private static String topicPath = "../corpus/SEARCHRESULT/20121003/logfile/";
+	/** the search trace of the experiment, see {@link TraceWriter} */
+	private static String tracePath = "../corpus/SEARCHRESULT/20121003/searchtrace";
 
+	/**
+	 * average the per step scores of the searches of one phase, for each loss function which guides the searches
+	 * 
+	 * @param args the search trace and the phase, test by default
+	 */
 	public static void main(String[] args) {
-		String parameter = "30-1";
-		List<String> files  = new ArrayList<String>();
-		files = new ArrayList<String>(Arrays.asList(new File(topicPath).list()));
-		List<String> mucFiles = new ArrayList<String>();
-		List<String> bcuedFiles = new ArrayList<String>();
-		List<String> pairwiseFiles = new ArrayList<String>();
-		List<String> ceafFiles = new ArrayList<String>();
-		for (String file : files) {
-			if (file.contains(parameter + "-MUC")) {
-				mucFiles.add(file);
-				continue;
-			}
-			
-			if (file.contains(parameter + "-BCubed")) {
-				bcuedFiles.add(file);
-				continue;
-			}
-			
-			if (file.contains(parameter + "-Pairwise")) {
-				pairwiseFiles.add(file);
-				continue;
-			}
+		String path = args.length > 0 ? args[0] : tracePath;
+		String phase = args.length > 1 ? args[1] : "test";
+		
+		// loss type -> the searches guided by the loss function, in the order of the topics
+		Map<String, List<TraceReader.Search>> searches = new LinkedHashMap<String, List<TraceReader.Search>>();
+		for (TraceReader.Search search : new TraceReader(path).getSearches(phase)) {
+			if (search.steps.isEmpty()) continue;
 			
-			if (file.contains(parameter + "-CEAF")) {
-				ceafFiles.add(file);
-				continue;
+			List<TraceReader.Search> lossSearches = searches.get(search.lossType);
+			if (lossSearches == null) {
+				lossSearches = new ArrayList<TraceReader.Search>();
+				searches.put(search.lossType, lossSearches);
 			}
+			lossSearches.add(search);
 		}
 		
-		Collections.sort(mucFiles);
-		Collections.sort(bcuedFiles);
-		Collections.sort(pairwiseFiles);
-		Collections.sort(ceafFiles);
-		
-		
-		List<List<Double>> mucScores = fillScore(mucFiles);
-		List<List<Double>> bcubedScores = fillScore(bcuedFiles);
-		List<List<Double>> pairwiseScores = fillScore(pairwiseFiles);
-		List<List<Double>> ceafScores = fillScore(ceafFiles);
-		
-		List<Double> mucscorewithzero = addScore(mucScores);
-		List<Double> bcubedscorewithzero = addScore(bcubedScores);
-		List<Double> pairwisescorewithzero = addScore(pairwiseScores);
-		List<Double> ceafscorewithzero = addScore(ceafScores);
+		List<String> lossTypes = new ArrayList<String>(searches.keySet());
+		List<List<List<Double>>> scores = new ArrayList<List<List<Double>>>();
+		int size = lossTypes.isEmpty() ? 0 : Integer.MAX_VALUE;
+		for (String lossType : lossTypes) {
+			List<TraceReader.Search> lossSearches = searches.get(lossType);
+			Collections.sort(lossSearches, new Comparator<TraceReader.Search>() {
+				public int compare(TraceReader.Search search1, TraceReader.Search search2) {
+					return search1.topic.compareTo(search2.topic);
+				}
+			});
+			scores.add(fillScore(lossSearches));
+			size = Math.min(size, lossSearches.size());
+		}
 		
-		int size = mucFiles.size();
-		List<List<Double>> mucScores1 = new ArrayList<List<Double>>();
-		List<List<Double>> bcubedScores1 = new ArrayList<List<Double>>();
-		List<List<Double>> pairwiseScores1 = new ArrayList<List<Double>>();
-		List<List<Double>> ceafScores1 = new ArrayList<List<Double>>();
+		// the topics where one of the searches has all zero scores are removed from all loss functions
+		List<List<List<Double>>> scoresWithoutZero = new ArrayList<List<List<Double>>>();
+		for (int k = 0; k < lossTypes.size(); k++) {
+			scoresWithoutZero.add(new ArrayList<List<Double>>());
+		}
 		for (int i = 0; i < size; i++) {
-			List<Double> mucscore = mucScores.get(i);
-			List<Double> bcubedscore = bcubedScores.get(i);
-			List<Double> pairwisescore = pairwiseScores.get(i);
-			List<Double> ceafscore = ceafScores.get(i);
-			
-			if (isAllZero(mucscore) || isAllZero(bcubedscore) || isAllZero(pairwisescore) || isAllZero(ceafscore)) continue;
+			boolean allZero = false;
+			for (List<List<Double>> lossScores : scores) {
+				if (isAllZero(lossScores.get(i))) {
+					allZero = true;
+				}
+			}
+			if (allZero) continue;
 			
-			mucScores1.add(mucscore);
-			bcubedScores1.add(bcubedscore);
-			pairwiseScores1.add(pairwisescore);
-			ceafScores1.add(ceafscore);
+			for (int k = 0; k < lossTypes.size(); k++) {
+				scoresWithoutZero.get(k).add(scores.get(k).get(i));
+			}
 		}
 		
-		List<Double> mucscorewithoutzero = addScore(mucScores1);
-		List<Double> bcubedscorewithoutzero = addScore(bcubedScores1);
-		List<Double> pairwisescorewithoutzero = addScore(pairwiseScores1);
-		List<Double> ceafscorewithoutzero = addScore(ceafScores1);
-		
+		for (int k = 0; k < lossTypes.size(); k++) {
+			System.out.println(lossTypes.get(k) + " : " + addScore(scoresWithoutZero.get(k)));
+		}
 		System.out.println("Done");
 	}
 	
@@ -148,23 +141,16 @@ public class AverageAnytimeDataCollection {
 		return score;
 	}
 	
-	/** read values from the file */
-	public static List<List<Double>> fillScore(List<String> files) {
+	/**
+	 * the per step F1 of the loss function of each search
+	 * 
+	 * @param searches
+	 * @return
+	 */
+	public static List<List<Double>> fillScore(List<TraceReader.Search> searches) {
 		List<List<Double>> scores = new ArrayList<List<Double>>();
-		for (String file : files) {
-			try {
-				BufferedReader entitiesBufferedReader = new BufferedReader(new FileReader(topicPath + file));
-				List<Double> score = new ArrayList<Double>();
-				for (String line = entitiesBufferedReader.readLine(); line != null; line = entitiesBufferedReader.readLine()) {
-					score.add(Double.parseDouble(line));
-				}
-				scores.add(score);
-				entitiesBufferedReader.close();
-			}
-			catch (Exception e) {
-				e.printStackTrace();
-				System.exit(1);
-			}
+		for (TraceReader.Search search : searches) {
+			scores.add(search.getScores(search.lossType));
 		}
 		
 		return scores;
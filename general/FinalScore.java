@@ -5,6 +5,7 @@ import java.io.FileReader;
 import java.util.*;
 
 import edu.oregonstate.io.ResultOutput;
+import edu.oregonstate.io.ResultStore;
 import edu.oregonstate.util.Command;
 
 /**
@@ -25,6 +26,9 @@ public class FinalScore {
 	
 	private String mscoreType;
 	
+	/** the scores of the experiment, null if the scores are read from the text files */
+	private ResultStore mstore;
+	
 	public void set (int iteration) {
 		mIteration = iteration;
 	}
@@ -47,6 +51,19 @@ public class FinalScore {
 		mcorpusPath = corpusPath + "/";
 	}
 	
+	/**
+	 * calculate the final performance from the result store of the experiment, instead of the text files
+	 * 
+	 * @param trainingTopics
+	 * @param testingTopics
+	 * @param corpusPath
+	 * @param store
+	 */
+	public FinalScore(String[] trainingTopics, String[] testingTopics, String corpusPath, ResultStore store) {
+		this(trainingTopics, testingTopics, corpusPath);
+		mstore = store;
+	}
+	
 	/**
 	 * calculate the final performance,
 	 * 
@@ -58,47 +75,20 @@ public class FinalScore {
 	}
 	
 	public void calculateTesting(String[] topics, String mode) {
-		List<List<String>> datas = new ArrayList<List<String>>();
-		int maximum = Integer.MIN_VALUE;
 		String outputPath = mcorpusPath + "finalresult/" + mode + "-" + mscoreType + "-" + mIteration;
+		List<List<double[]>> datas = new ArrayList<List<double[]>>();
 		for (String topic : topics) {
-			String topicPath = mcorpusPath + topic + "/" + mscoreType + "-" + mode + "-iteration" + mIteration + "-" + topic + "-scoredetail";
-			List<String> data = readData(topicPath);
-			int size = data.size();
-			if (size > maximum) {
-				maximum = size;
+			if (mstore != null) {
+				// the Pairwise detail of the testing is the detail of the loss function
+				String metric = mscoreType.equals("Pairwise") ? ResultStore.LOSS : mscoreType;
+				datas.add(mstore.get(mode, topic, mIteration, metric));
+			} else {
+				String topicPath = mcorpusPath + topic + "/" + mscoreType + "-" + mode + "-iteration" + mIteration + "-" + topic + "-scoredetail";
+				datas.add(convertData(readData(topicPath)));
 			}
-			datas.add(data);
 		}
 		
-		List<List<double[]>> numericDatas = convertData(datas, maximum);
-		
-		for (int i = 0; i < maximum; i++) {
-			List<double[]> records = new ArrayList<double[]>();
-			for (List<double[]> numericData: numericDatas) {
-				records.add(numericData.get(i));
-			}
-			
-			double precisionNum = 0.0;
-			double precisionDen = 0.0;
-			double recallNum = 0.0;
-			double recallDen = 0.0;
-			
-			for (double[] record : records) {
-				precisionNum += record[0];
-				precisionDen += record[1];
-				recallNum += record[2];
-				recallDen += record[3];
-			}
-			
-			double precision = precisionNum / precisionDen;
-			double recall = recallNum / recallDen;
-			
-			double f = (2 * precision * recall) / (precision + recall);
-			
-			String result = f + " " + precision + " " + recall;
-			ResultOutput.writeTextFile(outputPath, result);
-		}
+		aggregate(topics, datas, outputPath);
 	}
 	
 	/**
@@ -108,33 +98,46 @@ public class FinalScore {
 	 * @param mode
 	 */
 	public void calculateTraining(String[] topics, String mode) {
-		List<List<String>> datas = new ArrayList<List<String>>();
-		int maximum = Integer.MIN_VALUE;
 		String outputPath = mcorpusPath + "finalresult/" + mode + "-" + mIteration;
+		List<List<double[]>> datas = new ArrayList<List<double[]>>();
 		for (String topic : topics) {
-			String topicPath = mcorpusPath + topic + "/" + mode + "-iteration" + mIteration + "-" + topic + "-scoredetail";
-			List<String> data = readData(topicPath);
-			int size = data.size();
-			if (size > maximum) {
-				maximum = size;
+			if (mstore != null) {
+				datas.add(mstore.get(mode, topic, mIteration, ResultStore.LOSS));
+			} else {
+				String topicPath = mcorpusPath + topic + "/" + mode + "-iteration" + mIteration + "-" + topic + "-scoredetail";
+				datas.add(convertData(readData(topicPath)));
 			}
-			datas.add(data);
 		}
 		
-		List<List<double[]>> numericDatas = convertData(datas, maximum);
+		aggregate(topics, datas, outputPath);
+	}
+	
+	/**
+	 * sum the detail information of all topics step by step, a topic which stops earlier keeps its last 
+	 * step, and write F1, precision and recall of each step
+	 * 
+	 * @param topics
+	 * @param datas the detail information of each topic
+	 * @param outputPath
+	 */
+	private void aggregate(String[] topics, List<List<double[]>> datas, String outputPath) {
+		int maximum = Integer.MIN_VALUE;
+		for (int i = 0; i < datas.size(); i++) {
+			if (datas.get(i).isEmpty()) {
+				throw new RuntimeException("no score of topic " + topics[i] + " for " + outputPath);
+			}
+			maximum = Math.max(maximum, datas.get(i).size());
+		}
 		
+		StringBuilder sb = new StringBuilder();
 		for (int i = 0; i < maximum; i++) {
-			List<double[]> records = new ArrayList<double[]>();
-			for (List<double[]> numericData: numericDatas) {
-				records.add(numericData.get(i));
-			}
-			
 			double precisionNum = 0.0;
 			double precisionDen = 0.0;
 			double recallNum = 0.0;
 			double recallDen = 0.0;
 			
-			for (double[] record : records) {
+			for (List<double[]> data : datas) {
+				double[] record = data.get(Math.min(i, data.size() - 1));
 				precisionNum += record[0];
 				precisionDen += record[1];
 				recallNum += record[2];
@@ -146,44 +149,24 @@ public class FinalScore {
 			
 			double f = (2 * precision * recall) / (precision + recall);
 			
-			String result = f + " " + precision + " " + recall;
-			ResultOutput.writeTextFile(outputPath, result);
+			if (i > 0) sb.append("\n");
+			sb.append(f + " " + precision + " " + recall);
 		}
-
+		ResultOutput.writeTextFile(outputPath, sb.toString());
 	}
 	
 	/**
 	 * convert string to double[]
 	 * 
-	 * @param datas
+	 * @param data
 	 * @return
 	 */
-	private List<List<double[]>> convertData(List<List<String>> datas, int maximum) {
-		List<List<double[]>> numericDatas = new ArrayList<List<double[]>>();
-		
-		for (List<String> data : datas) {
-			List<double[]> numericData = new ArrayList<double[]>();
-			converted(data, maximum);
-			for (String record : data) {
-				String[] elements = record.split(" ");
-				double[] numericElements = new double[elements.length];
-				for (int i = 0; i < elements.length; i++) {
-					numericElements[i] = Double.parseDouble(elements[i]);
-				}
-				numericData.add(numericElements);
-			}
-			
-			numericDatas.add(numericData);
-		}
-		
-		return numericDatas;
-	}
-	
-	private void converted(List<String> data, int maximum) {
-		int size = data.size();
-		for (int i = 0; i < maximum - size; i++) {
-			data.add(data.get(size - 1));
+	private List<double[]> convertData(List<String> data) {
+		List<double[]> numericData = new ArrayList<double[]>();
+		for (String record : data) {
+			numericData.add(ResultStore.parse(record));
 		}
+		return numericData;
 	}
 	
 	/**
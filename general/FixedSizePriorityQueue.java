@@ -152,7 +152,23 @@ public class FixedSizePriorityQueue <E> implements Iterator<E>, Serializable, Cl
 	   * @param priority
 	   */
 	public boolean add(E key, double priority) {
+		addWithEviction(key, priority);
+		return true;
+	}
+	
+	/**
+	 * Adds a key to the queue with the given priority as add does, and returns the element which does not fit 
+	 * into the queue: the element with the lowest priority if the queue is full and the key has a higher priority, 
+	 * the key itself if the queue is full and it does not, or null if the queue is not full.
+	 * 
+	 * @param key
+	 * @param priority
+	 * @return
+	 */
+	public E addWithEviction(E key, double priority) {
+		E evicted = null;
 		if (size == capacity) {
+			evicted = key;
 			FixedSizePriorityQueue<E> pq = clone();
 			elements = new ArrayList<E>(capacity);
 			priorities = new double[capacity];
@@ -163,6 +179,7 @@ public class FixedSizePriorityQueue <E> implements Iterator<E>, Serializable, Cl
 				if (pq.size() < 1) {
 					
 					if (prio < priority) {
+						evicted = element;
 						prio = priority;
 						element = key;
 					}
@@ -182,7 +199,7 @@ public class FixedSizePriorityQueue <E> implements Iterator<E>, Serializable, Cl
 	    	heapifyUp(size);
 	    	size++;
 	    }
-	    return true;
+	    return evicted;
 	}
 
 	  /**
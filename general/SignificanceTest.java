@@ -0,0 +1,371 @@
+package edu.oregonstate.general;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import edu.oregonstate.io.ResultStore;
+
+/**
+ * paired significance test of two experiments on the same topics, from the per-topic precision and recall sums
+ * <p>
+ * For each topic and metric, the sums are precisionNum, precisionDen, recallNum and recallDen, the same detail
+ * which {@link FinalScore} aggregates. The statistics are the corpus level F1 of MUC, B<sup>3</sup> and CEAF,
+ * and the CoNLL F1 (their average). Two tests are supported:
+ * <ul>
+ * <li>paired bootstrap: the topics are resampled with replacement, which gives the confidence interval of the
+ * F1 difference, and the p-value of the hypothesis that the difference is 0 (shifted to the observed difference)</li>
+ * <li>approximate randomization: the outputs of the two experiments on each topic are swapped at random</li>
+ * </ul>
+ * The samples are split into fixed ranges which are evaluated by a fork-join pool on primitive arrays, each range
+ * has its own random generator seeded by the range, so the result does not depend on the number of threads.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class SignificanceTest {
+
+	/** the metrics of the sums, in the order of ResultStore.METRICS */
+	public static final String[] METRICS = ResultStore.METRICS;
+
+	/** the statistics, the F1 of each metric and CoNLL */
+	public static final String[] STATISTICS = {"MUC", "Bcubed", "CEAF", "CoNLL"};
+
+	/** the number of samples evaluated by one task */
+	private static final int THRESHOLD = 256;
+
+	/** the result of one statistic */
+	public static class Result {
+		public final String statistic;
+		/** F1 of the first and the second experiment */
+		public final double f1A;
+		public final double f1B;
+		/** the difference F1(B) - F1(A) */
+		public final double difference;
+		/** the confidence interval of the difference, NaN for the randomization test */
+		public final double low;
+		public final double high;
+		public final double pValue;
+
+		private Result(String statistic, double f1A, double f1B, double low, double high, double pValue) {
+			this.statistic = statistic;
+			this.f1A = f1A;
+			this.f1B = f1B;
+			this.difference = f1B - f1A;
+			this.low = low;
+			this.high = high;
+			this.pValue = pValue;
+		}
+
+		public String toString() {
+			return statistic + " " + f1A + " " + f1B + " " + difference + " " + low + " " + high + " " + pValue;
+		}
+	}
+
+	/** number of topics */
+	private final int mnoOfTopics;
+
+	/** sums of the two experiments, [topic][metric][4] flattened */
+	private final double[] msumsA;
+	private final double[] msumsB;
+
+	/** worker pool */
+	private final ForkJoinPool mpool;
+
+	/**
+	 * @param sumsA [metric][topic] -> precisionNum, precisionDen, recallNum, recallDen of the first experiment
+	 * @param sumsB the same of the second experiment
+	 * @param threads size of the worker pool
+	 */
+	public SignificanceTest(double[][][] sumsA, double[][][] sumsB, int threads) {
+		if (sumsA.length != METRICS.length || sumsB.length != METRICS.length) {
+			throw new RuntimeException("the sums should contain the metrics " + Arrays.toString(METRICS));
+		}
+		mnoOfTopics = sumsA[0].length;
+		msumsA = flatten(sumsA);
+		msumsB = flatten(sumsB);
+		if (msumsA.length != msumsB.length) {
+			throw new RuntimeException("the two experiments have different numbers of topics");
+		}
+		mpool = new ForkJoinPool(threads);
+	}
+
+	private double[] flatten(double[][][] sums) {
+		double[] flat = new double[mnoOfTopics * METRICS.length * 4];
+		for (int m = 0; m < METRICS.length; m++) {
+			if (sums[m].length != mnoOfTopics) {
+				throw new RuntimeException("metric " + METRICS[m] + " has a different number of topics");
+			}
+			for (int t = 0; t < mnoOfTopics; t++) {
+				System.arraycopy(sums[m][t], 0, flat, (t * METRICS.length + m) * 4, 4);
+			}
+		}
+		return flat;
+	}
+
+	/**
+	 * the sums of the metric over the topics of the experiment at the final step of each topic
+	 *
+	 * @param store
+	 * @param phase
+	 * @param topics
+	 * @param iteration
+	 * @return [metric][topic] -> precisionNum, precisionDen, recallNum, recallDen
+	 */
+	public static double[][][] readSums(ResultStore store, String phase, String[] topics, int iteration) {
+		double[][][] sums = new double[METRICS.length][topics.length][];
+		for (int m = 0; m < METRICS.length; m++) {
+			for (int t = 0; t < topics.length; t++) {
+				List<double[]> steps = store.get(phase, topics[t], iteration, METRICS[m]);
+				if (steps.isEmpty()) {
+					throw new RuntimeException("no " + METRICS[m] + " score of topic " + topics[t] + " in " + store.getPath());
+				}
+				sums[m][t] = steps.get(steps.size() - 1);
+			}
+		}
+		return sums;
+	}
+
+	/** add the sums of the topic to the totals */
+	private static void add(double[] sums, int topic, double[] totals) {
+		int offset = topic * totals.length;
+		for (int i = 0; i < totals.length; i++) {
+			totals[i] += sums[offset + i];
+		}
+	}
+
+	/** the statistics of the totals */
+	private static void statistics(double[] totals, double[] statistics) {
+		double conll = 0.0;
+		for (int m = 0; m < METRICS.length; m++) {
+			double precision = totals[m * 4] / totals[m * 4 + 1];
+			double recall = totals[m * 4 + 2] / totals[m * 4 + 3];
+			double f1 = 2 * precision * recall / (precision + recall);
+			f1 = Double.isNaN(f1) ? 0.0 : f1;
+			statistics[m] = f1;
+			conll += f1;
+		}
+		statistics[METRICS.length] = conll / METRICS.length;
+	}
+
+	/** the statistics of the experiment on all topics */
+	private double[] observed(double[] sums) {
+		double[] totals = new double[METRICS.length * 4];
+		for (int t = 0; t < mnoOfTopics; t++) {
+			add(sums, t, totals);
+		}
+		double[] statistics = new double[STATISTICS.length];
+		statistics(totals, statistics);
+		return statistics;
+	}
+
+	/** random generator of the sample range, independent of the scheduling */
+	private static Random random(long seed, int start) {
+		return new Random(seed * 0x9E3779B97F4A7C15L + start);
+	}
+
+	/** bootstrap differences of the samples [start, end), written to differences[statistic][sample] */
+	private class BootstrapTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int start;
+		private final int end;
+		private final long seed;
+		private final double[][] differences;
+
+		private BootstrapTask(int start, int end, long seed, double[][] differences) {
+			this.start = start;
+			this.end = end;
+			this.seed = seed;
+			this.differences = differences;
+		}
+
+		protected void compute() {
+			if (end - start > THRESHOLD) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new BootstrapTask(start, middle, seed, differences), new BootstrapTask(middle, end, seed, differences));
+				return;
+			}
+
+			Random random = random(seed, start);
+			double[] totalsA = new double[METRICS.length * 4];
+			double[] totalsB = new double[METRICS.length * 4];
+			double[] statisticsA = new double[STATISTICS.length];
+			double[] statisticsB = new double[STATISTICS.length];
+			for (int s = start; s < end; s++) {
+				Arrays.fill(totalsA, 0.0);
+				Arrays.fill(totalsB, 0.0);
+				for (int i = 0; i < mnoOfTopics; i++) {
+					int topic = random.nextInt(mnoOfTopics);
+					add(msumsA, topic, totalsA);
+					add(msumsB, topic, totalsB);
+				}
+				statistics(totalsA, statisticsA);
+				statistics(totalsB, statisticsB);
+				for (int k = 0; k < STATISTICS.length; k++) {
+					differences[k][s] = statisticsB[k] - statisticsA[k];
+				}
+			}
+		}
+	}
+
+	/** the number of randomized samples [start, end) whose absolute difference reaches the observed one */
+	private class RandomizationTask extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+		private final int start;
+		private final int end;
+		private final long seed;
+		private final double[] observed;
+
+		private RandomizationTask(int start, int end, long seed, double[] observed) {
+			this.start = start;
+			this.end = end;
+			this.seed = seed;
+			this.observed = observed;
+		}
+
+		protected long[] compute() {
+			if (end - start > THRESHOLD) {
+				int middle = (start + end) >>> 1;
+				RandomizationTask left = new RandomizationTask(start, middle, seed, observed);
+				left.fork();
+				long[] counts = new RandomizationTask(middle, end, seed, observed).compute();
+				long[] leftCounts = left.join();
+				for (int k = 0; k < counts.length; k++) {
+					counts[k] += leftCounts[k];
+				}
+				return counts;
+			}
+
+			Random random = random(seed, start);
+			long[] counts = new long[STATISTICS.length];
+			double[] totalsA = new double[METRICS.length * 4];
+			double[] totalsB = new double[METRICS.length * 4];
+			double[] statisticsA = new double[STATISTICS.length];
+			double[] statisticsB = new double[STATISTICS.length];
+			for (int s = start; s < end; s++) {
+				Arrays.fill(totalsA, 0.0);
+				Arrays.fill(totalsB, 0.0);
+				for (int topic = 0; topic < mnoOfTopics; topic++) {
+					if (random.nextBoolean()) {
+						add(msumsA, topic, totalsA);
+						add(msumsB, topic, totalsB);
+					} else {
+						add(msumsB, topic, totalsA);
+						add(msumsA, topic, totalsB);
+					}
+				}
+				statistics(totalsA, statisticsA);
+				statistics(totalsB, statisticsB);
+				for (int k = 0; k < STATISTICS.length; k++) {
+					// small tolerance, so a sample equal to the observed difference is counted
+					if (Math.abs(statisticsB[k] - statisticsA[k]) >= Math.abs(observed[k]) - 1e-12) {
+						counts[k]++;
+					}
+				}
+			}
+			return counts;
+		}
+	}
+
+	/**
+	 * paired bootstrap test
+	 *
+	 * @param noOfSamples
+	 * @param confidence for example 0.95
+	 * @param seed
+	 * @return one result for each statistic
+	 */
+	public List<Result> bootstrap(int noOfSamples, double confidence, long seed) {
+		double[] statisticsA = observed(msumsA);
+		double[] statisticsB = observed(msumsB);
+		double[][] differences = new double[STATISTICS.length][noOfSamples];
+		mpool.invoke(new BootstrapTask(0, noOfSamples, seed, differences));
+
+		List<Result> results = new ArrayList<Result>();
+		for (int k = 0; k < STATISTICS.length; k++) {
+			double observed = statisticsB[k] - statisticsA[k];
+			double[] sample = differences[k];
+
+			// the shifted differences which are at least as extreme as the observed difference
+			long extreme = 0;
+			for (double difference : sample) {
+				if (Math.abs(difference - observed) >= Math.abs(observed) - 1e-12) {
+					extreme++;
+				}
+			}
+
+			Arrays.sort(sample);
+			double alpha = (1.0 - confidence) / 2;
+			double low = sample[Math.max(0, (int) Math.floor(alpha * noOfSamples))];
+			double high = sample[Math.min(noOfSamples - 1, (int) Math.ceil((1.0 - alpha) * noOfSamples) - 1)];
+			results.add(new Result(STATISTICS[k], statisticsA[k], statisticsB[k], low, high, (extreme + 1.0) / (noOfSamples + 1.0)));
+		}
+		return results;
+	}
+
+	/**
+	 * approximate randomization test
+	 *
+	 * @param noOfSamples
+	 * @param seed
+	 * @return one result for each statistic
+	 */
+	public List<Result> randomization(int noOfSamples, long seed) {
+		double[] statisticsA = observed(msumsA);
+		double[] statisticsB = observed(msumsB);
+		double[] observed = new double[STATISTICS.length];
+		for (int k = 0; k < STATISTICS.length; k++) {
+			observed[k] = statisticsB[k] - statisticsA[k];
+		}
+		long[] counts = mpool.invoke(new RandomizationTask(0, noOfSamples, seed, observed));
+
+		List<Result> results = new ArrayList<Result>();
+		for (int k = 0; k < STATISTICS.length; k++) {
+			results.add(new Result(STATISTICS[k], statisticsA[k], statisticsB[k], Double.NaN, Double.NaN, (counts[k] + 1.0) / (noOfSamples + 1.0)));
+		}
+		return results;
+	}
+
+	public void shutdown() {
+		mpool.shutdown();
+	}
+
+	/**
+	 * compare two experiments
+	 *
+	 * @param args result store of the first experiment, result store of the second experiment, phase,
+	 * iteration, topics separated by comma, number of samples, and optionally the number of threads
+	 */
+	public static void main(String[] args) {
+		if (args.length < 6) {
+			System.out.println("usage: SignificanceTest storeA storeB phase iteration topics samples [threads]");
+			return;
+		}
+		String[] topics = args[4].split(",");
+		int iteration = Integer.parseInt(args[3]);
+		int noOfSamples = Integer.parseInt(args[5]);
+		int threads = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+
+		ResultStore storeA = new ResultStore(args[0]);
+		storeA.close();
+		ResultStore storeB = new ResultStore(args[1]);
+		storeB.close();
+		SignificanceTest test = new SignificanceTest(readSums(storeA, args[2], topics, iteration),
+				readSums(storeB, args[2], topics, iteration), threads);
+
+		System.out.println("statistic F1(A) F1(B) difference low high p-value");
+		System.out.println("paired bootstrap, 95% confidence interval");
+		for (Result result : test.bootstrap(noOfSamples, 0.95, 0)) {
+			System.out.println(result);
+		}
+		System.out.println("approximate randomization");
+		for (Result result : test.randomization(noOfSamples, 0)) {
+			System.out.println(result);
+		}
+		test.shutdown();
+	}
+}
@@ -0,0 +1,276 @@
+package edu.oregonstate.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import edu.oregonstate.util.Command;
+
+/**
+ * append-only binary store of the scores of an experiment, one segment file per run
+ * <p>
+ * Each record is (phase, topic, iteration, step, metric, values), where phase is the pass of the experiment
+ * which produces the score, for example train, costtrain, validationtrain or test. The metrics are
+ * <ul>
+ * <li>score: the F1 of the loss function and the cost score of the state</li>
+ * <li>loss: precisionNum, precisionDen, recallNum, recallDen of the loss function</li>
+ * <li>MUC, Bcubed, CEAF: precisionNum, precisionDen, recallNum, recallDen of the metric</li>
+ * <li>statistics: the corpus statistics of a topic</li>
+ * </ul>
+ * The records are kept in an in-memory index by (phase, topic, iteration, metric) and step, which is
+ * rebuilt from the segment when an existing store is opened. {@link #exportText(String)} writes the
+ * text layout of the per-topic score files used before.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class ResultStore {
+
+	public static final String SCORE = "score";
+
+	public static final String LOSS = "loss";
+
+	public static final String STATISTICS = "statistics";
+
+	/** the scores of the other metrics written during testing */
+	public static final String[] METRICS = {"MUC", "Bcubed", "CEAF"};
+
+	/** the values of one (phase, topic, iteration, metric) by step */
+	private static class Series {
+		private final String phase;
+		private final String topic;
+		private final int iteration;
+		private final String metric;
+		private final TreeMap<Integer, double[]> steps;
+
+		private Series(String phase, String topic, int iteration, String metric) {
+			this.phase = phase;
+			this.topic = topic;
+			this.iteration = iteration;
+			this.metric = metric;
+			steps = new TreeMap<Integer, double[]>();
+		}
+	}
+
+	/** segment file */
+	private String mpath;
+
+	/** output stream of the segment, null after close */
+	private DataOutputStream mout;
+
+	/** index of the records, in the order of their first appearance */
+	private Map<String, Series> mindex;
+
+	/**
+	 * open the store, the records of an existing segment are loaded into the index
+	 *
+	 * @param path
+	 */
+	public ResultStore(String path) {
+		mpath = path;
+		mindex = new LinkedHashMap<String, Series>();
+		try {
+			if (new File(path).exists()) {
+				load();
+			}
+			mout = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path, true)));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public String getPath() {
+		return mpath;
+	}
+
+	/** read all records of the segment, an incomplete last record is ignored */
+	private void load() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mpath)));
+		try {
+			while (true) {
+				String phase = in.readUTF();
+				String topic = in.readUTF();
+				int iteration = in.readInt();
+				int step = in.readInt();
+				String metric = in.readUTF();
+				double[] values = new double[in.readInt()];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = in.readDouble();
+				}
+				index(phase, topic, iteration, step, metric, values);
+			}
+		} catch (EOFException e) {
+			// end of the segment
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String key(String phase, String topic, int iteration, String metric) {
+		return phase + "\t" + topic + "\t" + iteration + "\t" + metric;
+	}
+
+	private void index(String phase, String topic, int iteration, int step, String metric, double[] values) {
+		String key = key(phase, topic, iteration, metric);
+		Series series = mindex.get(key);
+		if (series == null) {
+			series = new Series(phase, topic, iteration, metric);
+			mindex.put(key, series);
+		}
+		series.steps.put(step, values);
+	}
+
+	/**
+	 * append a record, a later record of the same step replaces the earlier one in the index
+	 *
+	 * @param phase
+	 * @param topic
+	 * @param iteration
+	 * @param step
+	 * @param metric
+	 * @param values
+	 */
+	public synchronized void append(String phase, String topic, int iteration, int step, String metric, double[] values) {
+		if (mout == null) {
+			throw new RuntimeException("the result store " + mpath + " is closed");
+		}
+		try {
+			mout.writeUTF(phase);
+			mout.writeUTF(topic);
+			mout.writeInt(iteration);
+			mout.writeInt(step);
+			mout.writeUTF(metric);
+			mout.writeInt(values.length);
+			for (double value : values) {
+				mout.writeDouble(value);
+			}
+			mout.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		index(phase, topic, iteration, step, metric, values.clone());
+	}
+
+	/**
+	 * the values of the (phase, topic, iteration, metric) in the order of the steps
+	 *
+	 * @return empty if there is no record
+	 */
+	public synchronized List<double[]> get(String phase, String topic, int iteration, String metric) {
+		Series series = mindex.get(key(phase, topic, iteration, metric));
+		if (series == null) {
+			return new ArrayList<double[]>();
+		}
+		return new ArrayList<double[]>(series.steps.values());
+	}
+
+	public synchronized boolean contains(String phase, String topic, int iteration, String metric) {
+		return mindex.containsKey(key(phase, topic, iteration, metric));
+	}
+
+	public synchronized void close() {
+		if (mout == null) return;
+		try {
+			mout.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		mout = null;
+	}
+
+	/** parse the detail information "precisionNum precisionDen recallNum recallDen" */
+	public static double[] parse(String detail) {
+		String trimmed = detail.trim();
+		if (trimmed.isEmpty()) return new double[0];
+
+		String[] elements = trimmed.split("\\s+");
+		double[] values = new double[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			values[i] = Double.parseDouble(elements[i]);
+		}
+		return values;
+	}
+
+	/** one line of the text layout, the values are separated by space */
+	private static String format(double[] values) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) sb.append(" ");
+			sb.append(values[i]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * write the text layout of the per-topic score files under the experiment folder: the score file
+	 * phase-iterationN-topic, the loss detail file phase-iterationN-topic-scoredetail, and for the phases
+	 * which score the other metrics, the files Pairwise-, MUC-, Bcubed- and CEAF-phase-iterationN-topic-scoredetail.
+	 * The corpus statistics are written to corpusStatisticsPath.
+	 *
+	 * @param experimentFolder
+	 */
+	public synchronized void exportText(String experimentFolder) {
+		for (Series series : mindex.values()) {
+			if (series.metric.equals(STATISTICS)) {
+				for (double[] values : series.steps.values()) {
+					String line = format(values);
+					if (!series.topic.isEmpty()) {
+						line = series.topic + " " + line;
+					}
+					ResultOutput.writeTextFile(experimentFolder + "/corpusStatisticsPath", line);
+				}
+				continue;
+			}
+
+			String folder = experimentFolder + "/" + series.topic;
+			Command.createDirectory(folder);
+			String name = series.phase + "-iteration" + series.iteration + "-" + series.topic;
+			List<String> paths = new ArrayList<String>();
+			if (series.metric.equals(SCORE)) {
+				paths.add(folder + "/" + name);
+			} else if (series.metric.equals(LOSS)) {
+				paths.add(folder + "/" + name + "-scoredetail");
+				if (contains(series.phase, series.topic, series.iteration, METRICS[0])) {
+					paths.add(folder + "/Pairwise-" + name + "-scoredetail");
+				}
+			} else {
+				paths.add(folder + "/" + series.metric + "-" + name + "-scoredetail");
+			}
+
+			for (String path : paths) {
+				StringBuilder sb = new StringBuilder();
+				for (double[] values : series.steps.values()) {
+					if (sb.length() > 0) sb.append("\n");
+					sb.append(format(values));
+				}
+				ResultOutput.writeTextFile(path, sb.toString());
+			}
+		}
+	}
+
+	/**
+	 * convert a segment to the text layout
+	 *
+	 * @param args the segment file and the experiment folder
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.out.println("usage: ResultStore segment experimentFolder");
+			return;
+		}
+		ResultStore store = new ResultStore(args[0]);
+		store.close();
+		store.exportText(args[1]);
+	}
+}
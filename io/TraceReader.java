@@ -0,0 +1,163 @@
+package edu.oregonstate.io;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * read the searches of a trace written by {@link TraceWriter}
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class TraceReader {
+
+	/** the steps of one search */
+	public static class Search {
+		public int id;
+
+		/** training or testing */
+		public String kind;
+		public String phase;
+		public String topic;
+
+		/** the score type of the loss function */
+		public String lossType;
+		public int iteration;
+		public List<TraceWriter.Record> steps = new ArrayList<TraceWriter.Record>();
+
+		/**
+		 * the F1 of the metric in the order of the steps
+		 *
+		 * @param metric the loss type, one of {@link TraceWriter#METRICS}, or cost for the cost score
+		 * @return
+		 */
+		public List<Double> getScores(String metric) {
+			int index = -1;
+			for (int i = 0; i < TraceWriter.METRICS.length; i++) {
+				if (TraceWriter.METRICS[i].equalsIgnoreCase(metric)) index = i;
+			}
+
+			List<Double> scores = new ArrayList<Double>();
+			for (TraceWriter.Record step : steps) {
+				if (metric.equals("cost")) {
+					scores.add(step.costScore);
+				} else if (index >= 0) {
+					scores.add(step.metrics[index][0]);
+				} else if (metric.equalsIgnoreCase(lossType)) {
+					scores.add(step.loss[0]);
+				} else {
+					throw new RuntimeException("the metric " + metric + " is not in the trace");
+				}
+			}
+			return scores;
+		}
+	}
+
+	/** search id -> search, in the order of their start */
+	private Map<Integer, Search> msearches;
+
+	public TraceReader(String path) {
+		msearches = new LinkedHashMap<Integer, Search>();
+		try {
+			FileInputStream in = new FileInputStream(path);
+			try {
+				FileChannel channel = in.getChannel();
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				read(path, buffer);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** read the records, an incomplete last record is ignored */
+	private void read(String path, ByteBuffer buffer) {
+		if (buffer.remaining() < 4 || buffer.getInt() != TraceWriter.MAGIC) {
+			throw new RuntimeException(path + " is not a search trace");
+		}
+
+		while (buffer.hasRemaining()) {
+			int start = buffer.position();
+			byte type = buffer.get();
+			if (type == TraceWriter.STEP) {
+				if (start + TraceWriter.STEP_SIZE > buffer.limit()) return;
+				TraceWriter.Record record = new TraceWriter.Record();
+				record.search = buffer.getInt();
+				record.step = buffer.getInt();
+				record.noOfClusters = buffer.getInt();
+				record.noOfCandidates = buffer.getInt();
+				record.action = buffer.getLong();
+				record.mergedSize = buffer.getInt();
+				for (int i = 0; i < record.loss.length; i++) {
+					record.loss[i] = buffer.getDouble();
+				}
+				for (double[] metric : record.metrics) {
+					for (int i = 0; i < metric.length; i++) {
+						metric[i] = buffer.getDouble();
+					}
+				}
+				record.costScore = buffer.getDouble();
+				record.bestScore = buffer.getDouble();
+				record.bestCostScore = buffer.getDouble();
+				record.elapsed = buffer.getLong();
+
+				Search search = msearches.get(record.search);
+				if (search == null) {
+					throw new RuntimeException("the step of search " + record.search + " appears before the search in " + path);
+				}
+				search.steps.add(record);
+			} else if (type == TraceWriter.SEARCH) {
+				Search search = new Search();
+				try {
+					search.id = buffer.getInt();
+					search.kind = readString(buffer);
+					search.phase = readString(buffer);
+					search.topic = readString(buffer);
+					search.lossType = readString(buffer);
+					search.iteration = buffer.getInt();
+				} catch (BufferUnderflowException e) {
+					return;
+				}
+				msearches.put(search.id, search);
+			} else {
+				throw new RuntimeException("unknown record " + type + " in " + path);
+			}
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort()];
+		buffer.get(bytes);
+		return new String(bytes, TraceWriter.UTF8);
+	}
+
+	/** all searches of the trace */
+	public List<Search> getSearches() {
+		return new ArrayList<Search>(msearches.values());
+	}
+
+	/**
+	 * the searches of the phase
+	 *
+	 * @param phase
+	 * @return
+	 */
+	public List<Search> getSearches(String phase) {
+		List<Search> searches = new ArrayList<Search>();
+		for (Search search : msearches.values()) {
+			if (search.phase.equals(phase)) {
+				searches.add(search);
+			}
+		}
+		return searches;
+	}
+}
@@ -0,0 +1,221 @@
+package edu.oregonstate.io;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * binary trace of the search steps, which replaces the per step lines of the log file
+ * <p>
+ * The trace starts with the header (MAGIC), followed by the records of the searches. A SEARCH record
+ * (SEARCH, search id, kind, phase, topic, loss type, iteration) starts a search, the strings are written as
+ * a short length and the UTF-8 bytes. Each step of the search is a STEP record of STEP_SIZE bytes:
+ * (STEP, search id, step, number of clusters, number of candidates, action, size of the merged cluster,
+ * loss F1/Precision/Recall, MUC, BCubed and CEAF F1/Precision/Recall, cost score, best loss score, best cost
+ * score, milliseconds since the start of the search). The scores which are not computed in a step are NaN.
+ * The steps of the searches running at the same time can be interleaved, they are told apart by the search id.
+ * <p>
+ * The records are buffered in a direct buffer and written through the channel of the file when the buffer is
+ * full or {@link #flush()} is called. {@link TraceReader} reads the trace back.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class TraceWriter {
+
+	public static final int MAGIC = 0x54524345;
+
+	public static final byte SEARCH = 1;
+
+	public static final byte STEP = 2;
+
+	/** the metrics scored in the steps of the testing search */
+	public static final String[] METRICS = {"MUC", "BCubed", "CEAF"};
+
+	/** the size of a STEP record */
+	public static final int STEP_SIZE = 1 + 4 + 4 + 4 + 4 + 8 + 4 + 8 * (3 + 3 * METRICS.length + 3) + 8;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** path -> writer */
+	private static Map<String, TraceWriter> writers = new HashMap<String, TraceWriter>();
+
+	/** one step of a search */
+	public static class Record {
+		public int search;
+		public int step;
+		public int noOfClusters;
+		public int noOfCandidates;
+
+		/** the merge action which produced the expanded state, see {@link edu.oregonstate.search.MergeAction} */
+		public long action;
+
+		/** the size of the cluster produced by the action */
+		public int mergedSize;
+
+		/** F1, Precision and Recall of the loss function */
+		public double[] loss = new double[3];
+
+		/** F1, Precision and Recall of each of METRICS */
+		public double[][] metrics = new double[METRICS.length][3];
+
+		public double costScore;
+		public double bestScore;
+		public double bestCostScore;
+
+		/** milliseconds since the start of the search */
+		public long elapsed;
+
+		/** start a new step, all scores are unknown */
+		public void reset(int search, int step) {
+			this.search = search;
+			this.step = step;
+			noOfClusters = 0;
+			noOfCandidates = 0;
+			action = -1L;
+			mergedSize = 0;
+			Arrays.fill(loss, Double.NaN);
+			for (double[] metric : metrics) {
+				Arrays.fill(metric, Double.NaN);
+			}
+			costScore = Double.NaN;
+			bestScore = Double.NaN;
+			bestCostScore = Double.NaN;
+			elapsed = 0L;
+		}
+	}
+
+	private String mpath;
+
+	private FileChannel mchannel;
+
+	private ByteBuffer mbuffer;
+
+	/** the id of the next search */
+	private int mnextSearch;
+
+	public TraceWriter(String path) {
+		mpath = path;
+		try {
+			mchannel = new FileOutputStream(path).getChannel();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		mbuffer = ByteBuffer.allocateDirect(1 << 16);
+		mbuffer.putInt(MAGIC);
+	}
+
+	/**
+	 * the writer of the path shared by the searches, created on the first call
+	 *
+	 * @param path
+	 * @return
+	 */
+	public static synchronized TraceWriter getWriter(String path) {
+		TraceWriter writer = writers.get(path);
+		if (writer == null) {
+			writer = new TraceWriter(path);
+			writers.put(path, writer);
+		}
+		return writer;
+	}
+
+	public String getPath() {
+		return mpath;
+	}
+
+	/**
+	 * start a search
+	 *
+	 * @param kind training or testing
+	 * @param phase
+	 * @param topic
+	 * @param lossType
+	 * @param iteration
+	 * @return the search id of its steps
+	 */
+	public synchronized int beginSearch(String kind, String phase, String topic, String lossType, int iteration) {
+		int search = mnextSearch++;
+		byte[][] strings = {bytes(kind), bytes(phase), bytes(topic), bytes(lossType)};
+		int size = 1 + 4 + 4;
+		for (byte[] string : strings) {
+			size += 2 + string.length;
+		}
+		ensureRemaining(size);
+		mbuffer.put(SEARCH);
+		mbuffer.putInt(search);
+		for (byte[] string : strings) {
+			mbuffer.putShort((short) string.length);
+			mbuffer.put(string);
+		}
+		mbuffer.putInt(iteration);
+		return search;
+	}
+
+	private static byte[] bytes(String value) {
+		return (value == null ? "" : value).getBytes(UTF8);
+	}
+
+	/** write the step */
+	public synchronized void write(Record record) {
+		ensureRemaining(STEP_SIZE);
+		mbuffer.put(STEP);
+		mbuffer.putInt(record.search);
+		mbuffer.putInt(record.step);
+		mbuffer.putInt(record.noOfClusters);
+		mbuffer.putInt(record.noOfCandidates);
+		mbuffer.putLong(record.action);
+		mbuffer.putInt(record.mergedSize);
+		for (double value : record.loss) {
+			mbuffer.putDouble(value);
+		}
+		for (double[] metric : record.metrics) {
+			for (double value : metric) {
+				mbuffer.putDouble(value);
+			}
+		}
+		mbuffer.putDouble(record.costScore);
+		mbuffer.putDouble(record.bestScore);
+		mbuffer.putDouble(record.bestCostScore);
+		mbuffer.putLong(record.elapsed);
+	}
+
+	/** write the buffer to the channel if it can not hold the next size bytes */
+	private void ensureRemaining(int size) {
+		if (mbuffer.remaining() < size) {
+			flush();
+		}
+	}
+
+	/** write the buffered records to the file */
+	public synchronized void flush() {
+		if (mchannel == null) {
+			throw new RuntimeException("the trace " + mpath + " is closed");
+		}
+		try {
+			mbuffer.flip();
+			while (mbuffer.hasRemaining()) {
+				mchannel.write(mbuffer);
+			}
+			mbuffer.clear();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public synchronized void close() {
+		if (mchannel == null) return;
+		flush();
+		try {
+			mchannel.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		mchannel = null;
+	}
+}
@@ -0,0 +1,209 @@
+package edu.oregonstate.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * read the episodes of a trajectory file written by {@link TrajectoryWriter}
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class TrajectoryReader {
+
+	/** a reference to a state, see {@link TrajectoryWriter} */
+	public static class Reference {
+		/** EMPTY, INITIAL or CANDIDATE */
+		public final byte kind;
+
+		/** the action id of the candidate */
+		public final long id;
+
+		private Reference(byte kind, long id) {
+			this.kind = kind;
+			this.id = id;
+		}
+	}
+
+	/** one step of the search */
+	public static class Step {
+		public int step;
+		public double bestScore;
+
+		/** the candidates in the order of the actions */
+		public long[] ids;
+		public double[][] scores;
+		public boolean[] good;
+
+		/** dense feature vectors over Feature.featuresName */
+		public double[][] features;
+
+		/** the candidates in the order of the loss queue */
+		public int[] lossOrder;
+		public double[] lossPriorities;
+
+		/** the beam in the order of its heap */
+		public Reference[] beam;
+		public double[] beamPriorities;
+
+		public Reference bestState;
+		public Reference previousBestState;
+	}
+
+	/** the steps of one search */
+	public static class Episode {
+		public String topic;
+		public int iteration;
+		public int beamWidth;
+
+		/** LOSS_POLICY or COST_POLICY */
+		public byte policy;
+		public double[] initialScore;
+		public List<Step> steps;
+	}
+
+	private String mpath;
+
+	private DataInputStream min;
+
+	/** the number of features of the file */
+	private int mnoOfFeatures;
+
+	public TrajectoryReader(String path) {
+		mpath = path;
+		try {
+			min = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+			if (min.readInt() != TrajectoryWriter.MAGIC) {
+				throw new RuntimeException(path + " is not a trajectory file");
+			}
+			mnoOfFeatures = min.readInt();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public int getNoOfFeatures() {
+		return mnoOfFeatures;
+	}
+
+	/**
+	 * the next episode of the file
+	 *
+	 * @return null at the end of the file, an incomplete last episode is ignored
+	 */
+	public Episode next() {
+		try {
+			byte type;
+			try {
+				type = min.readByte();
+			} catch (EOFException e) {
+				return null;
+			}
+			if (type != TrajectoryWriter.EPISODE) {
+				throw new RuntimeException("unknown record " + type + " in " + mpath);
+			}
+
+			Episode episode = new Episode();
+			episode.topic = min.readUTF();
+			episode.iteration = min.readInt();
+			episode.beamWidth = min.readInt();
+			episode.policy = min.readByte();
+			episode.initialScore = readScore();
+			int noOfSteps = min.readInt();
+			episode.steps = new ArrayList<Step>(noOfSteps);
+			for (int i = 0; i < noOfSteps; i++) {
+				episode.steps.add(readStep());
+			}
+			return episode;
+		} catch (EOFException e) {
+			return null;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** all remaining episodes of the file */
+	public List<Episode> readAll() {
+		List<Episode> episodes = new ArrayList<Episode>();
+		Episode episode;
+		while ((episode = next()) != null) {
+			episodes.add(episode);
+		}
+		return episodes;
+	}
+
+	private Step readStep() throws IOException {
+		Step step = new Step();
+		step.step = min.readInt();
+		step.bestScore = min.readDouble();
+
+		int noOfCandidates = min.readInt();
+		step.ids = new long[noOfCandidates];
+		step.scores = new double[noOfCandidates][];
+		step.good = new boolean[noOfCandidates];
+		step.features = new double[noOfCandidates][];
+		for (int i = 0; i < noOfCandidates; i++) {
+			step.ids[i] = min.readLong();
+			step.scores[i] = readScore();
+			step.good[i] = min.readBoolean();
+			step.features[i] = readFeatures();
+		}
+
+		int noOfLoss = min.readInt();
+		step.lossOrder = new int[noOfLoss];
+		step.lossPriorities = new double[noOfLoss];
+		for (int i = 0; i < noOfLoss; i++) {
+			step.lossOrder[i] = min.readInt();
+			step.lossPriorities[i] = min.readDouble();
+		}
+
+		int noOfBeam = min.readInt();
+		step.beam = new Reference[noOfBeam];
+		step.beamPriorities = new double[noOfBeam];
+		for (int i = 0; i < noOfBeam; i++) {
+			step.beam[i] = readReference();
+			step.beamPriorities[i] = min.readDouble();
+		}
+
+		step.bestState = readReference();
+		step.previousBestState = readReference();
+		return step;
+	}
+
+	private double[] readScore() throws IOException {
+		double[] score = new double[3];
+		for (int i = 0; i < 3; i++) {
+			score[i] = min.readDouble();
+		}
+		return score;
+	}
+
+	private double[] readFeatures() throws IOException {
+		double[] features = new double[mnoOfFeatures];
+		int noOfNonZero = min.readShort();
+		for (int i = 0; i < noOfNonZero; i++) {
+			int index = min.readShort();
+			features[index] = min.readDouble();
+		}
+		return features;
+	}
+
+	private Reference readReference() throws IOException {
+		byte kind = min.readByte();
+		long id = kind == TrajectoryWriter.CANDIDATE ? min.readLong() : 0L;
+		return new Reference(kind, id);
+	}
+
+	public void close() {
+		try {
+			min.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
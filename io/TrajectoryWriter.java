@@ -0,0 +1,268 @@
+package edu.oregonstate.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.oregonstate.features.Feature;
+import edu.oregonstate.general.FixedSizePriorityQueue;
+import edu.oregonstate.general.PriorityQueue;
+import edu.oregonstate.search.MergeAction;
+import edu.oregonstate.search.State;
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * binary trajectory file of the training searches, which can be replayed by
+ * {@link edu.oregonstate.training.ReplayTrainer} without the documents
+ * <p>
+ * A trajectory file starts with the header (MAGIC, the number of features), followed by the episodes,
+ * one for each search. An episode is (EPISODE, topic, iteration, beam width, policy, the loss score of the
+ * initial state, the number of steps, steps). Each step keeps what the search gives to the classifier:
+ * <ul>
+ * <li>the search step and the best loss score so far</li>
+ * <li>the candidates in the order of the actions: action id, loss score (F1, Precision, Recall), whether
+ * the candidate only contains right links, and the non-zero features as (feature index, value)</li>
+ * <li>the candidates in the order of the loss queue, as (candidate index, priority)</li>
+ * <li>the beam, and the best state and the previous best state, as references</li>
+ * </ul>
+ * A reference is EMPTY (a state without features), INITIAL (the initial state) or CANDIDATE followed by
+ * the action id of a candidate of the current or an earlier step of the episode. The cost scores are not
+ * kept, because they depend on the weight which is replayed. The episodes are built in memory and written
+ * as a whole, so the searches of different topics can share one file.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class TrajectoryWriter {
+
+	public static final int MAGIC = 0x5452414A;
+
+	public static final byte EPISODE = 1;
+
+	public static final byte EMPTY = 0;
+	public static final byte INITIAL = 1;
+	public static final byte CANDIDATE = 2;
+
+	/** the beam is ordered by the loss, the states are expanded by the training search */
+	public static final byte LOSS_POLICY = 0;
+
+	/** the beam is ordered by the cost, the states are expanded by the learned weight, for DAgger */
+	public static final byte COST_POLICY = 1;
+
+	/** path -> writer */
+	private static Map<String, TrajectoryWriter> writers = new HashMap<String, TrajectoryWriter>();
+
+	/** the steps of one search */
+	public static class Episode {
+		private final ByteArrayOutputStream mbytes;
+		private final DataOutputStream mout;
+		private final State<CorefCluster> minitial;
+		private final String mtopic;
+		private final int miteration;
+		private final int mbeamWidth;
+		private final byte mpolicy;
+		private final double[] minitialScore;
+		private int mnoOfSteps;
+
+		/**
+		 * @param topic
+		 * @param iteration
+		 * @param beamWidth
+		 * @param policy LOSS_POLICY or COST_POLICY
+		 * @param initial the initial state, with its loss score
+		 */
+		public Episode(String topic, int iteration, int beamWidth, byte policy, State<CorefCluster> initial) {
+			mbytes = new ByteArrayOutputStream();
+			mout = new DataOutputStream(mbytes);
+			minitial = initial;
+			mtopic = topic == null ? "" : topic;
+			miteration = iteration;
+			mbeamWidth = beamWidth;
+			mpolicy = policy;
+			minitialScore = initial.getScore().clone();
+		}
+
+		public int getNoOfSteps() {
+			return mnoOfSteps;
+		}
+
+		/**
+		 * record the step
+		 *
+		 * @param step the search step
+		 * @param bestScore the best loss score so far
+		 * @param candidates the candidates in the order of the actions
+		 * @param good whether each candidate only contains right links
+		 * @param lossQueue the candidates ordered by the loss
+		 * @param beam
+		 * @param bestState
+		 * @param previousBestState
+		 */
+		public void addStep(int step, double bestScore, List<State<CorefCluster>> candidates, boolean[] good,
+				PriorityQueue<State<CorefCluster>> lossQueue, FixedSizePriorityQueue<State<CorefCluster>> beam,
+				State<CorefCluster> bestState, State<CorefCluster> previousBestState) {
+			try {
+				mout.writeInt(step);
+				mout.writeDouble(bestScore);
+
+				Map<State<CorefCluster>, Integer> indexes = new IdentityHashMap<State<CorefCluster>, Integer>();
+				mout.writeInt(candidates.size());
+				for (int i = 0; i < candidates.size(); i++) {
+					State<CorefCluster> candidate = candidates.get(i);
+					indexes.put(candidate, i);
+					mout.writeLong(candidate.getID());
+					writeScore(candidate.getScore());
+					mout.writeBoolean(good[i]);
+					writeFeatures(candidate.getFeatures());
+				}
+
+				List<State<CorefCluster>> lossElements = lossQueue.getElements();
+				double[] lossPriorities = lossQueue.getPriorities();
+				mout.writeInt(lossQueue.size());
+				for (int i = 0; i < lossQueue.size(); i++) {
+					Integer index = indexes.get(lossElements.get(i));
+					if (index == null) {
+						throw new RuntimeException("the state of the loss queue is not a candidate of step " + step);
+					}
+					mout.writeInt(index);
+					mout.writeDouble(lossPriorities[i]);
+				}
+
+				List<State<CorefCluster>> beamElements = beam.getElements();
+				double[] beamPriorities = beam.getPriorities();
+				mout.writeInt(beam.size());
+				for (int i = 0; i < beam.size(); i++) {
+					writeReference(beamElements.get(i));
+					mout.writeDouble(beamPriorities[i]);
+				}
+
+				writeReference(bestState);
+				writeReference(previousBestState);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			mnoOfSteps++;
+		}
+
+		private void writeScore(double[] score) throws IOException {
+			for (int i = 0; i < 3; i++) {
+				mout.writeDouble(score[i]);
+			}
+		}
+
+		private void writeFeatures(Counter<String> features) throws IOException {
+			int noOfNonZero = 0;
+			for (String feature : Feature.featuresName) {
+				if (features.getCount(feature) != 0.0) noOfNonZero++;
+			}
+			mout.writeShort(noOfNonZero);
+			for (int i = 0; i < Feature.featuresName.length; i++) {
+				double value = features.getCount(Feature.featuresName[i]);
+				if (value != 0.0) {
+					mout.writeShort(i);
+					mout.writeDouble(value);
+				}
+			}
+		}
+
+		private void writeReference(State<CorefCluster> state) throws IOException {
+			if (state == minitial) {
+				mout.writeByte(INITIAL);
+			} else if (state.getID() == MergeAction.NONE) {
+				mout.writeByte(EMPTY);
+			} else {
+				mout.writeByte(CANDIDATE);
+				mout.writeLong(state.getID());
+			}
+		}
+	}
+
+	/** trajectory file */
+	private String mpath;
+
+	private DataOutputStream mout;
+
+	/**
+	 * open the trajectory file
+	 *
+	 * @param path
+	 * @param append whether the episodes are appended to an existing file, which aggregates the episodes of several runs
+	 */
+	public TrajectoryWriter(String path, boolean append) {
+		mpath = path;
+		try {
+			File file = new File(path);
+			boolean header = !append || !file.exists() || file.length() == 0;
+			mout = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, !header)));
+			if (header) {
+				mout.writeInt(MAGIC);
+				mout.writeInt(Feature.featuresName.length);
+				mout.flush();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * the writer of the path shared by the searches, created on the first call. The first call
+	 * truncates the file unless append is true
+	 *
+	 * @param path
+	 * @param append
+	 * @return
+	 */
+	public static synchronized TrajectoryWriter getWriter(String path, boolean append) {
+		TrajectoryWriter writer = writers.get(path);
+		if (writer == null) {
+			writer = new TrajectoryWriter(path, append);
+			writers.put(path, writer);
+		}
+		return writer;
+	}
+
+	public String getPath() {
+		return mpath;
+	}
+
+	/** append the episode to the file */
+	public synchronized void write(Episode episode) {
+		if (mout == null) {
+			throw new RuntimeException("the trajectory file " + mpath + " is closed");
+		}
+		try {
+			mout.writeByte(EPISODE);
+			mout.writeUTF(episode.mtopic);
+			mout.writeInt(episode.miteration);
+			mout.writeInt(episode.mbeamWidth);
+			mout.writeByte(episode.mpolicy);
+			for (int i = 0; i < 3; i++) {
+				mout.writeDouble(episode.minitialScore[i]);
+			}
+			mout.writeInt(episode.mnoOfSteps);
+			episode.mout.flush();
+			episode.mbytes.writeTo(mout);
+			mout.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public synchronized void close() {
+		if (mout == null) return;
+		try {
+			mout.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		mout = null;
+	}
+}
@@ -22,6 +22,13 @@ public interface ILossFunction {
 	
 	public void setState(State<CorefCluster> state);
 	
+	/** 
+	 * calculate the loss of the successor which merges cluster j into cluster i of the state, from the running
+	 * sums of the state instead of the whole partition of the successor, the result is read by getLossScore and 
+	 * getDetailScoreInformation
+	 */
+	public void calculateMergeLossFunction(State<CorefCluster> state, int i, int j);
+	
 	public double[] getLossScore();
 	
 	public double[] getMetricScore();
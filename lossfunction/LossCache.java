@@ -0,0 +1,225 @@
+package edu.oregonstate.lossfunction;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.stanford.nlp.dcoref.CorefScorer.ScoreType;
+
+/**
+ * bounded LRU cache of the loss of the partitions, shared by the searches of all training iterations
+ * <p>
+ * The metric loss of a state only depends on its partition, not on the weight, so a partition which is
+ * reached again in a later iteration does not need to be scored again. The entries are keyed by the
+ * document key, the partition fingerprint ({@link edu.oregonstate.search.PartitionHash}) and the score type,
+ * and keep the loss score (F1, Precision, Recall) and its detail information. When the cache is full, the least
+ * recently used entry is evicted, or appended to the spill file if one is configured, from which it can be read
+ * back. An entry is only appended once, it keeps its record in the spill file when it is read back.
+ * <p>
+ * <b>NOTE</b> the key does not contain the loss function model, so one cache should only be used with one loss
+ * function model, which is the case for one experiment.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class LossCache {
+
+	/** the cache shared by the searches */
+	private static LossCache sharedCache;
+
+	/** a cached loss */
+	public static class Entry {
+		private final double[] score;
+		private final String detail;
+
+		private Entry(double[] score, String detail) {
+			this.score = score;
+			this.detail = detail;
+		}
+
+		/** F1, Precision and Recall, a copy */
+		public double[] getScore() {
+			return score.clone();
+		}
+
+		public String getDetail() {
+			return detail;
+		}
+	}
+
+	/** maximum number of entries in memory */
+	private final int mcapacity;
+
+	/** spill file path, empty if the evicted entries are dropped */
+	private final String mspillPath;
+
+	/** key -> entry, in access order */
+	private LinkedHashMap<Long, Entry> mentries;
+
+	/** spill file, null if the evicted entries are dropped */
+	private RandomAccessFile mspill;
+
+	/** key -> offset of the entry in the spill file, the entry may be in memory as well */
+	private Map<Long, Long> moffsets;
+
+	private long mhits;
+	private long mspillHits;
+	private long mmisses;
+
+	/**
+	 * @param capacity maximum number of entries in memory
+	 * @param spillPath the file of the evicted entries, empty or null to drop them
+	 */
+	public LossCache(int capacity, String spillPath) {
+		mcapacity = capacity;
+		mspillPath = spillPath == null ? "" : spillPath;
+		mentries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+				if (size() <= mcapacity) return false;
+				spill(eldest.getKey(), eldest.getValue());
+				return true;
+			}
+		};
+		moffsets = new HashMap<Long, Long>();
+		if (!mspillPath.isEmpty()) {
+			try {
+				mspill = new RandomAccessFile(mspillPath, "rw");
+				mspill.setLength(0);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * the cache shared by all searches of the experiment, created on the first call. A call with
+	 * a different configuration replaces the shared cache
+	 *
+	 * @param capacity
+	 * @param spillPath
+	 * @return
+	 */
+	public static synchronized LossCache getSharedCache(int capacity, String spillPath) {
+		String path = spillPath == null ? "" : spillPath;
+		if (sharedCache == null || sharedCache.mcapacity != capacity || !sharedCache.mspillPath.equals(path)) {
+			if (sharedCache != null) {
+				sharedCache.close();
+			}
+			sharedCache = new LossCache(capacity, spillPath);
+		}
+		return sharedCache;
+	}
+
+	/** the key of the loss of the score type of a partition of a document */
+	public static long key(long documentKey, long fingerprint, ScoreType type) {
+		long z = (documentKey * 0x9E3779B97F4A7C15L + fingerprint) * 0x9E3779B97F4A7C15L + type.ordinal();
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * the cached loss of the key
+	 *
+	 * @param key
+	 * @return null if the loss has not been cached
+	 */
+	public synchronized Entry get(long key) {
+		Entry entry = mentries.get(key);
+		if (entry != null) {
+			mhits++;
+			return entry;
+		}
+
+		Long offset = moffsets.get(key);
+		if (offset != null) {
+			entry = read(offset);
+			mentries.put(key, entry);
+			mspillHits++;
+			return entry;
+		}
+
+		mmisses++;
+		return null;
+	}
+
+	/**
+	 * cache the loss of the key
+	 *
+	 * @param key
+	 * @param score F1, Precision and Recall
+	 * @param detail
+	 */
+	public synchronized void put(long key, double[] score, String detail) {
+		moffsets.remove(key);
+		mentries.put(key, new Entry(score.clone(), detail));
+	}
+
+	/** append the evicted entry to the spill file, unless it has been appended before */
+	private void spill(long key, Entry entry) {
+		if (mspill == null || moffsets.containsKey(key)) return;
+		try {
+			long offset = mspill.length();
+			mspill.seek(offset);
+			mspill.writeInt(entry.score.length);
+			for (double value : entry.score) {
+				mspill.writeDouble(value);
+			}
+			mspill.writeUTF(entry.detail);
+			moffsets.put(key, offset);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** read the entry at the offset of the spill file */
+	private Entry read(long offset) {
+		try {
+			mspill.seek(offset);
+			double[] score = new double[mspill.readInt()];
+			for (int i = 0; i < score.length; i++) {
+				score[i] = mspill.readDouble();
+			}
+			return new Entry(score, mspill.readUTF());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** number of entries in memory and in the spill file */
+	public synchronized int size() {
+		int size = moffsets.size();
+		for (Long key : mentries.keySet()) {
+			if (!moffsets.containsKey(key)) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	public synchronized void close() {
+		mentries.clear();
+		moffsets.clear();
+		if (mspill != null) {
+			try {
+				mspill.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			mspill = null;
+		}
+	}
+
+	/** hit rate information, for the log file */
+	public synchronized String statistics() {
+		long total = mhits + mspillHits + mmisses;
+		double rate = total == 0 ? 0.0 : (double) (mhits + mspillHits) / total;
+		return "loss cache hits : " + mhits + ", spill hits : " + mspillHits + ", misses : " + mmisses + ", hit rate : " + rate
+				+ ", entries : " + size();
+	}
+}
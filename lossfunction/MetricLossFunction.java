@@ -1,25 +1,19 @@
 package edu.oregonstate.lossfunction;
 
-import java.util.Map;
-import java.util.ResourceBundle;
-
 import edu.stanford.nlp.dcoref.CorefCluster;
-import edu.stanford.nlp.dcoref.CorefScorer;
-import edu.stanford.nlp.dcoref.Mention;
-import edu.stanford.nlp.dcoref.ScorerBCubed;
-import edu.stanford.nlp.dcoref.ScorerMUC;
-import edu.stanford.nlp.dcoref.ScorerPairwise;
 import edu.stanford.nlp.dcoref.CorefScorer.ScoreType;
-import edu.stanford.nlp.dcoref.ScorerBCubed.BCubedType;
 import edu.stanford.nlp.dcoref.Document;
 import edu.oregonstate.experiment.ExperimentConstructor;
-import edu.oregonstate.general.DoubleOperation;
-import edu.oregonstate.io.ResultOutput;
-import edu.oregonstate.score.ScorerCEAF;
+import edu.oregonstate.score.ContingencyScorer;
 import edu.oregonstate.search.State;
-import edu.oregonstate.util.DocumentMerge;
 import edu.oregonstate.util.EecbConstants;
 
+/**
+ * metric loss function, the loss of a state is its F1, Precision and Recall of the score type
+ * <p>
+ * The state is scored on its cluster labels by {@link ContingencyScorer}, so neither the document 
+ * nor the cluster ids of its mentions are modified, and each thread can score with its own instance.
+ */
 public class MetricLossFunction implements ILossFunction {
 
 	private ScoreType mtype;
@@ -28,12 +22,13 @@ public class MetricLossFunction implements ILossFunction {
 	
 	private State<CorefCluster> mstate;
 	
-	private double[] scores;
+	/** the state whose sums are kept by the scorer for the merge loss */
+	private State<CorefCluster> mbaseState;
 	
-	private double precisionNumSum;
-    private double precisionDenSum;
-    private double recallNumSum;
-    private double recallDenSum;
+	/** scorer of the current document */
+	private ContingencyScorer mscorer;
+	
+	private double[] scores;
 	
 	public MetricLossFunction() {
 		mtype = (ScoreType) ExperimentConstructor.getParameter(EecbConstants.LOSSFUNCTION, "scoreType");
@@ -45,6 +40,10 @@ public class MetricLossFunction implements ILossFunction {
 	}
 	
 	public void setDocument(Document document) {
+		if (document != mdocument) {
+			mscorer = new ContingencyScorer(document);
+			mbaseState = null;
+		}
 		mdocument = document;
 	}
 	
@@ -53,67 +52,29 @@ public class MetricLossFunction implements ILossFunction {
 	}
 	
 	public void calculateLossFunction() {
-		Document documentState = new Document();
-		DocumentMerge dm = new DocumentMerge(mdocument, documentState);
-		dm.addDocument();
-    	setNextDocument(documentState, mstate);
-    	scores = calculateF1(documentState, mtype);
+		mbaseState = null;
+		mscorer.score(mstate.getState());
+    	scores = mscorer.getScore(mtype);
 	}
 	
-	private void setNextDocument(Document documentState, State<CorefCluster> state) {
-		documentState.corefClusters = state.getState();
-		for (Integer id : documentState.corefClusters.keySet()) {
-			CorefCluster cluster = documentState.corefClusters.get(id);
-			for (Mention m : cluster.corefMentions) {
-				int mentionID = m.mentionID;
-				Mention correspondingMention = documentState.allPredictedMentions.get(mentionID);
-				int clusterid = id;
-				correspondingMention.corefClusterID = clusterid;
-			}
+	/** Pairwise, MUC and B-cubed are updated from the two clusters in O(|A| + |B|), CEAF still needs the whole partition */
+	public void calculateMergeLossFunction(State<CorefCluster> state, int i, int j) {
+		if (state != mbaseState) {
+			mscorer.setBase(state.getState());
+			mbaseState = state;
 		}
+		mscorer.scoreMerge(i, j, mtype == ScoreType.CEAF);
+		scores = mscorer.getScore(mtype);
 	}
 	
-	// calculate F1, Precision and Recall according to the Score Type
-    private double[] calculateF1(Document document, ScoreType type) {
-        double F1 = 0.0;
-        CorefScorer score;
-        switch(type) {
-            case MUC:
-                score = new ScorerMUC();
-                break;
-            case BCubed:
-                score = new ScorerBCubed(BCubedType.Bconll);
-                break;
-            case CEAF:
-                score = new ScorerCEAF();
-                break;
-            case Pairwise:
-                score = new ScorerPairwise();
-                break;
-            default:
-                score = new ScorerMUC();
-                break;
-        }
-        
-        score.calculateScore(document);
-        F1 = score.getF1();
-        double precision = score.getPrecision();
-        double recall = score.getRecall();
-        
-        precisionNumSum = score.precisionNumSum;
-        precisionDenSum = score.precisionDenSum;
-        recallNumSum = score.recallNumSum;
-        recallDenSum = score.recallDenSum;
-        
-        double[] result = {DoubleOperation.transformNaN(F1), DoubleOperation.transformNaN(precision), DoubleOperation.transformNaN(recall)};
-        return result;
-    }
-    
     public String getDetailScoreInformation() {
-    	return precisionNumSum + " " + precisionDenSum + " " + recallNumSum + " " + recallDenSum;
+    	return mscorer.getDetailInformation(mtype);
     }
     
+    /** score the current clusters of the document */
     public double[] getMetricScore() {
-    	return calculateF1(mdocument, mtype);
+    	mbaseState = null;
+    	mscorer.score(mdocument.corefClusters);
+    	return mscorer.getScore(mtype);
     }
 }
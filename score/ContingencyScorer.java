@@ -0,0 +1,478 @@
+package edu.oregonstate.score;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import edu.oregonstate.general.DoubleOperation;
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.dcoref.CorefScorer.ScoreType;
+import edu.stanford.nlp.dcoref.Document;
+import edu.stanford.nlp.dcoref.Mention;
+
+/**
+ * score a clustering against the gold clustering on integer cluster labels
+ * <p>
+ * The mentions of a document (the union of the predicted and the gold mentions) are addressed by a dense
+ * index. A clustering is an int[] of cluster labels over that index, ABSENT for the mentions which are not
+ * in the clustering. One sparse contingency table of the response and key labels gives Pairwise, MUC,
+ * B<sup>3</sup>, CEAF and CoNLL F1 in one pass, without constructing any Document.
+ * <p>
+ * The sums are the ones of the scorers used before: B<sup>3</sup> follows ScorerBCubed with the Bconll type, and CEAF
+ * follows {@link ScorerCEAF}, with its similarity and with the self alignments of the response and the key as the
+ * denominators. For B<sup>3</sup>, a mention which is only in the response (twinless) and alone in its cluster is
+ * discarded, the other twinless response mentions are singletons in the key for the recall, and the twinless key
+ * mentions are singletons in the response for the precision. For the gold mention experiments the two mention sets
+ * are the same.
+ * <p>
+ * After {@link #setBase(Map)}, the effect of merging two clusters of the base clustering is computed by 
+ * {@link #scoreMerge(int, int, boolean)} from the key histograms of the two clusters, in O(|A| + |B|) 
+ * for Pairwise, MUC and B<sup>3</sup>. CEAF needs the whole alignment, so it is scored from scratch.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class ContingencyScorer {
+
+	/** label of a mention which is not in the clustering */
+	public static final int ABSENT = -1;
+
+	/** the metrics, the order of the sums */
+	private static final ScoreType[] TYPES = {ScoreType.Pairwise, ScoreType.MUC, ScoreType.BCubed, ScoreType.CEAF};
+
+	/** mention id -> mention index */
+	private Map<Integer, Integer> mindex;
+
+	/** mention index -> mention id */
+	private int[] mmentionIDs;
+
+	/** key labels of the document */
+	private int[] mkey;
+
+	/** precisionNum, precisionDen, recallNum, recallDen of each metric */
+	private double[][] msums;
+
+	/** the sums of the base clustering */
+	private double[][] mbaseSums;
+
+	/** the base clustering */
+	private Map<Integer, CorefCluster> mbase;
+
+	/** base cluster id -> (key label -> number of mentions) */
+	private Map<Integer, Map<Integer, Integer>> mhistograms;
+
+	/** base cluster id -> number of mentions */
+	private Map<Integer, Integer> mresponseSizes;
+
+	/** base cluster id -> number of mentions which are not in the key */
+	private Map<Integer, Integer> mresponseTwinless;
+
+	/** key label -> number of mentions */
+	private Map<Integer, Integer> mkeySizes;
+
+	/** CEAF alignment solver, reused across the calls */
+	private SparseAssignment massignment;
+
+	/** scorer of the clustering without document, the labels of score(response, key) can be any labels of the same length */
+	public ContingencyScorer() {
+		msums = new double[TYPES.length][4];
+		massignment = new SparseAssignment();
+	}
+
+	/**
+	 * scorer of the document, the key labels are taken from the gold clusters
+	 *
+	 * @param document
+	 */
+	public ContingencyScorer(Document document) {
+		this();
+		TreeSet<Integer> ids = new TreeSet<Integer>();
+		ids.addAll(document.allPredictedMentions.keySet());
+		ids.addAll(document.allGoldMentions.keySet());
+		mindex = new HashMap<Integer, Integer>();
+		mmentionIDs = new int[ids.size()];
+		int index = 0;
+		for (Integer id : ids) {
+			mmentionIDs[index] = id;
+			mindex.put(id, index);
+			index++;
+		}
+		mkey = labels(document.goldCorefClusters);
+		mkeySizes = new HashMap<Integer, Integer>();
+		for (int label : mkey) {
+			if (label == ABSENT) continue;
+			Integer size = mkeySizes.get(label);
+			mkeySizes.put(label, size == null ? 1 : size + 1);
+		}
+	}
+
+	public int getNumberOfMentions() {
+		return mmentionIDs.length;
+	}
+
+	/** the mention index of the mention id, -1 if the mention is not in the document */
+	public int getIndex(int mentionID) {
+		Integer index = mindex.get(mentionID);
+		return index == null ? -1 : index;
+	}
+
+	/** the labels of the clusters, the label of a mention is the key of its cluster */
+	public int[] labels(Map<Integer, CorefCluster> clusters) {
+		int[] labels = new int[mmentionIDs.length];
+		Arrays.fill(labels, ABSENT);
+		for (Integer id : clusters.keySet()) {
+			for (Mention mention : clusters.get(id).getCorefMentions()) {
+				labels[mindex.get(mention.mentionID)] = id;
+			}
+		}
+		return labels;
+	}
+
+	/** score the response labels against the gold clusters of the document */
+	public void score(int[] response) {
+		score(response, mkey);
+	}
+
+	/** score the clusters against the gold clusters of the document */
+	public void score(Map<Integer, CorefCluster> clusters) {
+		score(labels(clusters), mkey);
+	}
+
+	/**
+	 * score the response labels against the key labels
+	 *
+	 * @param response
+	 * @param key
+	 */
+	public void score(int[] response, int[] key) {
+		if (response.length != key.length) {
+			throw new RuntimeException("response and key have different numbers of mentions: " + response.length + " " + key.length);
+		}
+		for (double[] sums : msums) {
+			Arrays.fill(sums, 0.0);
+		}
+
+		int n = response.length;
+		int[] r = new int[n];
+		int[] k = new int[n];
+		int noOfResponses = dense(response, r);
+		int noOfKeys = dense(key, k);
+
+		// cluster sizes and twinless mentions
+		int[] responseSizes = new int[noOfResponses];
+		int[] keySizes = new int[noOfKeys];
+		int[] responseTwinless = new int[noOfResponses];
+		int[] keyTwinless = new int[noOfKeys];
+		int noOfTwinned = 0;
+		for (int i = 0; i < n; i++) {
+			if (r[i] >= 0) responseSizes[r[i]]++;
+			if (k[i] >= 0) keySizes[k[i]]++;
+			if (r[i] >= 0 && k[i] < 0) responseTwinless[r[i]]++;
+			if (k[i] >= 0 && r[i] < 0) keyTwinless[k[i]]++;
+			if (r[i] >= 0 && k[i] >= 0) noOfTwinned++;
+		}
+
+		// the non-empty cells of the contingency table, sorted by response then key
+		long[] codes = new long[noOfTwinned];
+		int index = 0;
+		for (int i = 0; i < n; i++) {
+			if (r[i] >= 0 && k[i] >= 0) {
+				codes[index++] = (long) r[i] * noOfKeys + k[i];
+			}
+		}
+		Arrays.sort(codes);
+
+		int noOfCells = 0;
+		int[] cellResponse = new int[noOfTwinned];
+		int[] cellKey = new int[noOfTwinned];
+		int[] cellCount = new int[noOfTwinned];
+		for (int i = 0; i < codes.length; i++) {
+			if (i > 0 && codes[i] == codes[i - 1]) {
+				cellCount[noOfCells - 1]++;
+			} else {
+				cellResponse[noOfCells] = (int) (codes[i] / noOfKeys);
+				cellKey[noOfCells] = (int) (codes[i] % noOfKeys);
+				cellCount[noOfCells] = 1;
+				noOfCells++;
+			}
+		}
+
+		// partitions of each cluster by the other side, a twinless mention is its own partition
+		int[] responsePartitions = new int[noOfResponses];
+		int[] keyPartitions = new int[noOfKeys];
+		for (int c = 0; c < noOfCells; c++) {
+			responsePartitions[cellResponse[c]]++;
+			keyPartitions[cellKey[c]]++;
+		}
+
+		double[] pairwise = msums[0];
+		double[] muc = msums[1];
+		double[] bcubed = msums[2];
+		for (int c = 0; c < noOfCells; c++) {
+			double count = cellCount[c];
+			pairwise[0] += count * (count - 1) / 2;
+			bcubed[0] += count * count / responseSizes[cellResponse[c]];
+			bcubed[2] += count * count / keySizes[cellKey[c]];
+		}
+		pairwise[2] = pairwise[0];
+
+		for (int i = 0; i < noOfResponses; i++) {
+			double size = responseSizes[i];
+			pairwise[1] += size * (size - 1) / 2;
+			muc[0] += size - responsePartitions[i] - responseTwinless[i];
+			muc[1] += size - 1;
+			if (isDiscarded(responseSizes[i], responseTwinless[i])) continue;
+			bcubed[0] += responseTwinless[i] / size;
+			bcubed[1] += size;
+			bcubed[2] += responseTwinless[i];
+			bcubed[3] += responseTwinless[i];
+		}
+		for (int i = 0; i < noOfKeys; i++) {
+			double size = keySizes[i];
+			pairwise[3] += size * (size - 1) / 2;
+			muc[2] += size - keyPartitions[i] - keyTwinless[i];
+			muc[3] += size - 1;
+			bcubed[0] += keyTwinless[i];
+			bcubed[1] += keyTwinless[i];
+			bcubed[2] += keyTwinless[i] / size;
+			bcubed[3] += size;
+		}
+
+		// CEAF, the best one to one alignment of the clusters, only the cells can have a positive similarity
+		int noOfEdges = 0;
+		int[] edgeKey = new int[noOfCells];
+		int[] edgeResponse = new int[noOfCells];
+		double[] similarity = new double[noOfCells];
+		for (int c = 0; c < noOfCells; c++) {
+			double weight = ScorerCEAF.similarity(cellCount[c], responseSizes[cellResponse[c]], keySizes[cellKey[c]]);
+			if (weight <= 0.0) continue;
+			edgeKey[noOfEdges] = cellKey[c];
+			edgeResponse[noOfEdges] = cellResponse[c];
+			similarity[noOfEdges] = weight;
+			noOfEdges++;
+		}
+		double alignment = massignment.solve(noOfKeys, noOfResponses, noOfEdges, edgeKey, edgeResponse, similarity);
+		double[] ceaf = msums[3];
+		ceaf[0] = alignment;
+		ceaf[2] = alignment;
+		for (int i = 0; i < noOfResponses; i++) {
+			ceaf[1] += ScorerCEAF.similarity(responseSizes[i], responseSizes[i], responseSizes[i]);
+		}
+		for (int i = 0; i < noOfKeys; i++) {
+			ceaf[3] += ScorerCEAF.similarity(keySizes[i], keySizes[i], keySizes[i]);
+		}
+	}
+
+	/** whether the response cluster is one twinless mention, which B<sup>3</sup> discards */
+	private static boolean isDiscarded(int size, int twinless) {
+		return size == 1 && twinless == 1;
+	}
+
+	/**
+	 * score the base clustering, and keep its sums and the key histogram of each cluster for {@link #scoreMerge}
+	 *
+	 * @param clusters
+	 */
+	public void setBase(Map<Integer, CorefCluster> clusters) {
+		score(clusters);
+		mbase = clusters;
+		mbaseSums = new double[TYPES.length][];
+		for (int i = 0; i < TYPES.length; i++) {
+			mbaseSums[i] = msums[i].clone();
+		}
+
+		mhistograms = new HashMap<Integer, Map<Integer, Integer>>();
+		mresponseSizes = new HashMap<Integer, Integer>();
+		mresponseTwinless = new HashMap<Integer, Integer>();
+		for (Integer id : clusters.keySet()) {
+			Map<Integer, Integer> histogram = new HashMap<Integer, Integer>();
+			int twinless = 0;
+			for (Mention mention : clusters.get(id).getCorefMentions()) {
+				int label = mkey[mindex.get(mention.mentionID)];
+				if (label == ABSENT) {
+					twinless++;
+					continue;
+				}
+				Integer count = histogram.get(label);
+				histogram.put(label, count == null ? 1 : count + 1);
+			}
+			mhistograms.put(id, histogram);
+			mresponseSizes.put(id, clusters.get(id).getCorefMentions().size());
+			mresponseTwinless.put(id, twinless);
+		}
+	}
+
+	/**
+	 * score the base clustering after merging cluster j into cluster i
+	 *
+	 * @param iID
+	 * @param jID
+	 * @param withCEAF whether score CEAF, which needs the whole clustering
+	 */
+	public void scoreMerge(int iID, int jID, boolean withCEAF) {
+		if (mbase == null || !mhistograms.containsKey(iID) || !mhistograms.containsKey(jID)) {
+			throw new RuntimeException("clusters " + iID + " and " + jID + " are not in the base clustering");
+		}
+
+		if (withCEAF) {
+			int[] labels = labels(mbase);
+			for (Mention mention : mbase.get(jID).getCorefMentions()) {
+				labels[mindex.get(mention.mentionID)] = iID;
+			}
+			score(labels);
+		}
+
+		Map<Integer, Integer> a = mhistograms.get(iID);
+		Map<Integer, Integer> b = mhistograms.get(jID);
+		if (a.size() > b.size()) {
+			Map<Integer, Integer> temp = a;
+			a = b;
+			b = temp;
+		}
+		double sizeA = mresponseSizes.get(iID);
+		double sizeB = mresponseSizes.get(jID);
+		double twinless = mresponseTwinless.get(iID) + mresponseTwinless.get(jID);
+
+		// the key clusters shared by the two clusters
+		double crossPairs = 0.0;
+		double sharedKeys = 0.0;
+		double recallBcubed = 0.0;
+		for (Map.Entry<Integer, Integer> entry : a.entrySet()) {
+			Integer countB = b.get(entry.getKey());
+			if (countB == null) continue;
+			double pairs = (double) entry.getValue() * countB;
+			crossPairs += pairs;
+			sharedKeys++;
+			recallBcubed += 2 * pairs / mkeySizes.get(entry.getKey());
+		}
+
+		// B3 precision of the two clusters before and after the merge
+		double squaresA = 0.0;
+		for (Integer count : mhistograms.get(iID).values()) {
+			squaresA += (double) count * count;
+		}
+		double squaresB = 0.0;
+		for (Integer count : mhistograms.get(jID).values()) {
+			squaresB += (double) count * count;
+		}
+		int twinlessA = mresponseTwinless.get(iID);
+		int twinlessB = mresponseTwinless.get(jID);
+		boolean discardedA = isDiscarded(mresponseSizes.get(iID), twinlessA);
+		boolean discardedB = isDiscarded(mresponseSizes.get(jID), twinlessB);
+		double before = (discardedA ? 0.0 : (squaresA + twinlessA) / sizeA) + (discardedB ? 0.0 : (squaresB + twinlessB) / sizeB);
+		double after = (squaresA + squaresB + 2 * crossPairs + twinless) / (sizeA + sizeB);
+
+		// the merged cluster is not discarded, and its twinless mentions are key singletons in the recall
+		double sizeBefore = (discardedA ? 0.0 : sizeA) + (discardedB ? 0.0 : sizeB);
+		double twinlessBefore = (sizeA == 1 ? 0.0 : twinlessA) + (sizeB == 1 ? 0.0 : twinlessB);
+
+		double[] pairwise = msums[0];
+		double[] muc = msums[1];
+		double[] bcubed = msums[2];
+		System.arraycopy(mbaseSums[0], 0, pairwise, 0, 4);
+		System.arraycopy(mbaseSums[1], 0, muc, 0, 4);
+		System.arraycopy(mbaseSums[2], 0, bcubed, 0, 4);
+
+		pairwise[0] += crossPairs;
+		pairwise[1] += sizeA * sizeB;
+		pairwise[2] += crossPairs;
+
+		// the merged cluster has one key partition less for each shared key cluster, and needs one more link
+		muc[0] += sharedKeys;
+		muc[1] += 1;
+		muc[2] += sharedKeys;
+
+		bcubed[0] += after - before;
+		bcubed[1] += sizeA + sizeB - sizeBefore;
+		bcubed[2] += recallBcubed + twinless - twinlessBefore;
+		bcubed[3] += twinless - twinlessBefore;
+
+		if (!withCEAF) {
+			Arrays.fill(msums[3], Double.NaN);
+		}
+	}
+
+	/**
+	 * relabel the clusters by 0 .. number of clusters - 1, ABSENT stays ABSENT
+	 *
+	 * @param labels
+	 * @param dense
+	 * @return the number of clusters
+	 */
+	private int dense(int[] labels, int[] dense) {
+		Map<Integer, Integer> ids = new HashMap<Integer, Integer>();
+		for (int i = 0; i < labels.length; i++) {
+			if (labels[i] == ABSENT) {
+				dense[i] = ABSENT;
+				continue;
+			}
+			Integer id = ids.get(labels[i]);
+			if (id == null) {
+				id = ids.size();
+				ids.put(labels[i], id);
+			}
+			dense[i] = id;
+		}
+		return ids.size();
+	}
+
+	/** the sums of the metric */
+	private double[] sums(ScoreType type) {
+		for (int i = 0; i < TYPES.length; i++) {
+			if (TYPES[i] == type) return msums[i];
+		}
+		throw new RuntimeException("score type not supported: " + type);
+	}
+
+	public double getPrecisionNumSum(ScoreType type) {
+		return sums(type)[0];
+	}
+
+	public double getPrecisionDenSum(ScoreType type) {
+		return sums(type)[1];
+	}
+
+	public double getRecallNumSum(ScoreType type) {
+		return sums(type)[2];
+	}
+
+	public double getRecallDenSum(ScoreType type) {
+		return sums(type)[3];
+	}
+
+	public double getPrecision(ScoreType type) {
+		double[] sums = sums(type);
+		return sums[0] / sums[1];
+	}
+
+	public double getRecall(ScoreType type) {
+		double[] sums = sums(type);
+		return sums[2] / sums[3];
+	}
+
+	public double getF1(ScoreType type) {
+		double precision = getPrecision(type);
+		double recall = getRecall(type);
+		return 2 * precision * recall / (precision + recall);
+	}
+
+	/** F1, Precision and Recall, NaN is transformed */
+	public double[] getScore(ScoreType type) {
+		double[] result = {DoubleOperation.transformNaN(getF1(type)), DoubleOperation.transformNaN(getPrecision(type)),
+				DoubleOperation.transformNaN(getRecall(type))};
+		return result;
+	}
+
+	/** the average F1 of MUC, B3 and CEAF */
+	public double getCoNLLF1() {
+		return (DoubleOperation.transformNaN(getF1(ScoreType.MUC)) + DoubleOperation.transformNaN(getF1(ScoreType.BCubed))
+				+ DoubleOperation.transformNaN(getF1(ScoreType.CEAF))) / 3;
+	}
+
+	/** precisionNum precisionDen recallNum recallDen, the format of the score detail files */
+	public String getDetailInformation(ScoreType type) {
+		double[] sums = sums(type);
+		return sums[0] + " " + sums[1] + " " + sums[2] + " " + sums[3];
+	}
+}
@@ -1,7 +1,7 @@
 package edu.oregonstate.score;
 
-import java.util.Arrays;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.List;
@@ -26,9 +26,13 @@ import edu.stanford.nlp.dcoref.Mention;
  */
 public class ScorerCEAF extends CorefScorer {
 	
+	/** alignment solver, reused across the documents */
+	private SparseAssignment massignment;
+	
 	// update all fields of CorefScorer to public. 
 	public ScorerCEAF() {
 		super();
+		massignment = new SparseAssignment();
 		scoreType = ScoreType.CEAF;
 	}
 	
@@ -44,60 +48,77 @@ public class ScorerCEAF extends CorefScorer {
 
 	// calculate the simialrity	
 	public double similarity(CorefCluster responseCluster, CorefCluster referenceCluster) {
-		Set<Mention> responseMentions = responseCluster.corefMentions;
-		Set<Mention> referenceMentions = referenceCluster.corefMentions;
-		List<Integer> responseMentionIDs = new ArrayList<Integer>();
-		List<Integer> referenceMentionIDs = new ArrayList<Integer>();
-		
-		for (Mention mention : responseMentions) {
-			responseMentionIDs.add(mention.mentionID);
-		}
-		for (Mention mention : referenceMentions ) {
+		Set<Integer> referenceMentionIDs = new HashSet<Integer>();
+		for (Mention mention : referenceCluster.corefMentions) {
 			referenceMentionIDs.add(mention.mentionID);
 		}
-		int responseSize = responseMentionIDs.size();
-		int referenceSize = referenceMentionIDs.size();	
-		responseMentionIDs.retainAll(referenceMentionIDs);
-		int overlap = responseMentionIDs.size();
-		return (2 * overlap ) / (responseSize * referenceSize); 			
+		int overlap = 0;
+		for (Mention mention : responseCluster.corefMentions) {
+			if (referenceMentionIDs.contains(mention.mentionID)) overlap++;
+		}
+		return similarity(overlap, responseCluster.corefMentions.size(), referenceCluster.corefMentions.size());
 	} 
+	
+	/** the similarity of two clusters from their overlap, also used by {@link ContingencyScorer} */
+	static double similarity(int overlap, int responseSize, int referenceSize) {
+		return (2 * overlap ) / (responseSize * referenceSize);
+	}
 
-	// calculate the cost function
+	/**
+	 * calculate the cost function. Only the cluster pairs which share a mention are scored, through the 
+	 * mention to response cluster index, and the alignment is solved on each connected component by 
+	 * {@link SparseAssignment}
+	 */
 	public double scoreHelper(Map<Integer, CorefCluster> reference, Map<Integer, CorefCluster> response) {
-		double cost = 0.0;
 		if (reference.size() == 0 || response.size() == 0) return 0.0;
-		int size = reference.size() >= response.size() ? reference.size() : response.size();
-		double[][] scores = new double[size][size];
-		double max = 1.0;
-		for (double[] score : scores) {
-			Arrays.fill(score, max);
-		}
-		Set<Integer> responseSet = response.keySet();
-		Iterator<Integer> responseIt = responseSet.iterator();
+		
+		// mention id -> response cluster index
+		Map<Integer, Integer> mentionToResponse = new HashMap<Integer, Integer>();
+		int[] responseSizes = new int[response.size()];
 		int i = 0;
-		int j = 0;
-		while (responseIt.hasNext()) {
-			CorefCluster responseCluster = response.get(responseIt.next());
-			j = 0;
-			Set<Integer> referenceSet = reference.keySet();
-			Iterator<Integer> referenceIt = referenceSet.iterator();
-			while (referenceIt.hasNext()) {
-				CorefCluster referenceCluster = reference.get(referenceIt.next());
-				scores[j][i] = max - similarity(responseCluster, referenceCluster); // how to calculate the similarity 
-				j++;
-			} 
+		for (CorefCluster responseCluster : response.values()) {
+			for (Mention mention : responseCluster.corefMentions) {
+				mentionToResponse.put(mention.mentionID, i);
+			}
+			responseSizes[i] = responseCluster.corefMentions.size();
 			i++;
 		}
 		
-		AssignmentProblem ap = new AssignmentProblem(scores);
-		int[][] solution = ap.solve(new HungarianAlgorithm());
-		for (i = 0; i < solution.length; i++) {
-    			if (solution[i][0] >= 0) {
-      				cost += max - scores[solution[i][0]][i]; //how to calculate this 
-    			}
-  		}		
+		// overlaps of the pairs which share a mention
+		List<Integer> rows = new ArrayList<Integer>();
+		List<Integer> columns = new ArrayList<Integer>();
+		List<Double> weights = new ArrayList<Double>();
+		Map<Integer, Integer> overlaps = new HashMap<Integer, Integer>();
+		int j = 0;
+		for (CorefCluster referenceCluster : reference.values()) {
+			overlaps.clear();
+			for (Mention mention : referenceCluster.corefMentions) {
+				Integer responseIndex = mentionToResponse.get(mention.mentionID);
+				if (responseIndex == null) continue;
+				Integer overlap = overlaps.get(responseIndex);
+				overlaps.put(responseIndex, overlap == null ? 1 : overlap + 1);
+			}
+			for (Map.Entry<Integer, Integer> entry : overlaps.entrySet()) {
+				double weight = similarity(entry.getValue(), responseSizes[entry.getKey()], referenceCluster.corefMentions.size());
+				if (weight <= 0.0) continue;
+				rows.add(j);
+				columns.add(entry.getKey());
+				weights.add(weight);
+			}
+			j++;
+		}
+		
+		int noOfEdges = weights.size();
+		int[] edgeRows = new int[noOfEdges];
+		int[] edgeColumns = new int[noOfEdges];
+		double[] edgeWeights = new double[noOfEdges];
+		for (int e = 0; e < noOfEdges; e++) {
+			edgeRows[e] = rows.get(e);
+			edgeColumns[e] = columns.get(e);
+			edgeWeights[e] = weights.get(e);
+		}
 		
-  		return cost;
+  		return massignment.solve(reference.size(), response.size(), noOfEdges, edgeRows, edgeColumns, edgeWeights);
 	}
 	
 	/**
@@ -0,0 +1,238 @@
+package edu.oregonstate.score;
+
+import java.util.Arrays;
+
+/**
+ * maximum weight one to one alignment of a sparse bipartite graph, used by CEAF
+ * <p>
+ * Only the edges with a positive weight are given, the missing pairs have weight 0. The graph is split
+ * into connected components, which are aligned independently by the Hungarian algorithm with potentials,
+ * so the cost is cubic in the size of the largest component instead of the number of clusters. All
+ * work arrays are kept by the instance and only grow, so a reused solver does not allocate once it has
+ * seen its largest problem. An instance is not thread safe.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class SparseAssignment {
+
+	/** union-find parent of the nodes, rows first and then columns */
+	private int[] mparent;
+
+	/** node -> local index in its component, valid when the stamp of the node is the component */
+	private int[] mlocal;
+
+	/** node -> the component which assigned its local index */
+	private int[] mstamp;
+
+	/** the edges sorted by component */
+	private int[] morder;
+
+	/** start of the edges of each component in morder */
+	private int[] moffsets;
+
+	/** dense cost matrix of a component, row major */
+	private double[] mcosts;
+
+	/** potentials, assignment and augmenting path of the Hungarian algorithm, 1-based */
+	private double[] mu;
+	private double[] mv;
+	private double[] mminv;
+	private int[] mp;
+	private int[] mway;
+	private boolean[] mused;
+
+	public SparseAssignment() {
+		mparent = new int[0];
+		mlocal = new int[0];
+		mstamp = new int[0];
+		morder = new int[0];
+		moffsets = new int[0];
+		mcosts = new double[0];
+		ensureComponentCapacity(0);
+	}
+
+	/**
+	 * the maximum total weight of a one to one alignment of the rows and the columns
+	 *
+	 * @param noOfRows
+	 * @param noOfColumns
+	 * @param noOfEdges
+	 * @param rows row of each edge
+	 * @param columns column of each edge
+	 * @param weights positive weight of each edge, each pair appears at most once
+	 * @return
+	 */
+	public double solve(int noOfRows, int noOfColumns, int noOfEdges, int[] rows, int[] columns, double[] weights) {
+		if (noOfEdges == 0) return 0.0;
+
+		int noOfNodes = noOfRows + noOfColumns;
+		if (mparent.length < noOfNodes) {
+			mparent = new int[noOfNodes];
+			mlocal = new int[noOfNodes];
+			mstamp = new int[noOfNodes];
+			moffsets = new int[noOfNodes + 1];
+		}
+		if (morder.length < noOfEdges) {
+			morder = new int[noOfEdges];
+		}
+
+		// connected components
+		for (int i = 0; i < noOfNodes; i++) {
+			mparent[i] = i;
+			mstamp[i] = -1;
+		}
+		for (int e = 0; e < noOfEdges; e++) {
+			int root1 = find(rows[e]);
+			int root2 = find(noOfRows + columns[e]);
+			if (root1 != root2) {
+				mparent[root2] = root1;
+			}
+		}
+
+		// counting sort of the edges by the root of their component
+		Arrays.fill(moffsets, 0, noOfNodes + 1, 0);
+		for (int e = 0; e < noOfEdges; e++) {
+			moffsets[find(rows[e]) + 1]++;
+		}
+		for (int i = 0; i < noOfNodes; i++) {
+			moffsets[i + 1] += moffsets[i];
+		}
+		for (int e = 0; e < noOfEdges; e++) {
+			int root = find(rows[e]);
+			morder[moffsets[root]++] = e;
+		}
+		// moffsets[root] is now the end of the component, shift it to the start
+		for (int i = noOfNodes; i > 0; i--) {
+			moffsets[i] = moffsets[i - 1];
+		}
+		moffsets[0] = 0;
+
+		double total = 0.0;
+		for (int root = 0; root < noOfNodes; root++) {
+			int start = moffsets[root];
+			int end = moffsets[root + 1];
+			if (start == end) continue;
+
+			if (end - start == 1) {
+				total += weights[morder[start]];
+			} else {
+				total += solveComponent(root, start, end, noOfRows, rows, columns, weights);
+			}
+		}
+		return total;
+	}
+
+	/** the root of the node */
+	private int find(int node) {
+		while (mparent[node] != node) {
+			mparent[node] = mparent[mparent[node]];
+			node = mparent[node];
+		}
+		return node;
+	}
+
+	/** align one component by the Hungarian algorithm on its dense cost matrix */
+	private double solveComponent(int component, int start, int end, int noOfRows, int[] rows, int[] columns, double[] weights) {
+		int noOfLocalRows = 0;
+		int noOfLocalColumns = 0;
+		for (int k = start; k < end; k++) {
+			int e = morder[k];
+			int row = rows[e];
+			int column = noOfRows + columns[e];
+			if (mstamp[row] != component) {
+				mstamp[row] = component;
+				mlocal[row] = noOfLocalRows++;
+			}
+			if (mstamp[column] != component) {
+				mstamp[column] = component;
+				mlocal[column] = noOfLocalColumns++;
+			}
+		}
+
+		int n = Math.max(noOfLocalRows, noOfLocalColumns);
+		ensureComponentCapacity(n);
+		Arrays.fill(mcosts, 0, n * n, 0.0);
+		for (int k = start; k < end; k++) {
+			int e = morder[k];
+			mcosts[mlocal[rows[e]] * n + mlocal[noOfRows + columns[e]]] = -weights[e];
+		}
+
+		return -hungarian(n);
+	}
+
+	/** grow the work arrays of the Hungarian algorithm */
+	private void ensureComponentCapacity(int n) {
+		if (mcosts.length < n * n) {
+			mcosts = new double[n * n];
+		}
+		if (mu == null || mu.length < n + 1) {
+			mu = new double[n + 1];
+			mv = new double[n + 1];
+			mminv = new double[n + 1];
+			mp = new int[n + 1];
+			mway = new int[n + 1];
+			mused = new boolean[n + 1];
+		}
+	}
+
+	/**
+	 * minimum cost perfect assignment of the n x n matrix in mcosts
+	 *
+	 * @param n
+	 * @return the minimum cost
+	 */
+	private double hungarian(int n) {
+		Arrays.fill(mu, 0, n + 1, 0.0);
+		Arrays.fill(mv, 0, n + 1, 0.0);
+		Arrays.fill(mp, 0, n + 1, 0);
+		Arrays.fill(mway, 0, n + 1, 0);
+
+		for (int i = 1; i <= n; i++) {
+			mp[0] = i;
+			int j0 = 0;
+			Arrays.fill(mminv, 0, n + 1, Double.POSITIVE_INFINITY);
+			Arrays.fill(mused, 0, n + 1, false);
+			do {
+				mused[j0] = true;
+				int i0 = mp[j0];
+				double delta = Double.POSITIVE_INFINITY;
+				int j1 = 0;
+				for (int j = 1; j <= n; j++) {
+					if (mused[j]) continue;
+					double current = mcosts[(i0 - 1) * n + (j - 1)] - mu[i0] - mv[j];
+					if (current < mminv[j]) {
+						mminv[j] = current;
+						mway[j] = j0;
+					}
+					if (mminv[j] < delta) {
+						delta = mminv[j];
+						j1 = j;
+					}
+				}
+				for (int j = 0; j <= n; j++) {
+					if (mused[j]) {
+						mu[mp[j]] += delta;
+						mv[j] -= delta;
+					} else {
+						mminv[j] -= delta;
+					}
+				}
+				j0 = j1;
+			} while (mp[j0] != 0);
+
+			// augment along the path
+			do {
+				int j1 = mway[j0];
+				mp[j0] = mp[j1];
+				j0 = j1;
+			} while (j0 != 0);
+		}
+
+		double cost = 0.0;
+		for (int j = 1; j <= n; j++) {
+			cost += mcosts[(mp[j] - 1) * n + (j - 1)];
+		}
+		return cost;
+	}
+}
@@ -3,33 +3,37 @@ package edu.oregonstate.search;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import edu.oregonstate.classifier.IClassifier;
 import edu.oregonstate.costfunction.ICostFunction;
 import edu.oregonstate.experiment.ExperimentConstructor;
+import edu.oregonstate.features.ClusterPairFeatureCache;
 import edu.oregonstate.features.Feature;
+import edu.oregonstate.features.FeatureStore;
 import edu.oregonstate.general.DoubleOperation;
 import edu.oregonstate.general.FixedSizePriorityQueue;
 import edu.oregonstate.general.PriorityQueue;
 import edu.oregonstate.io.ResultOutput;
+import edu.oregonstate.io.ResultStore;
+import edu.oregonstate.io.TraceWriter;
+import edu.oregonstate.io.TrajectoryWriter;
 import edu.oregonstate.lossfunction.ILossFunction;
-import edu.oregonstate.score.ScorerCEAF;
-import edu.oregonstate.util.DocumentMerge;
+import edu.oregonstate.lossfunction.LossCache;
+import edu.oregonstate.score.ContingencyScorer;
 import edu.oregonstate.util.EecbConstants;
 import edu.stanford.nlp.dcoref.Constants;
 import edu.stanford.nlp.dcoref.CorefCluster;
-import edu.stanford.nlp.dcoref.CorefScorer;
 import edu.stanford.nlp.dcoref.CorefScorer.ScoreType;
 import edu.stanford.nlp.dcoref.Dictionaries;
 import edu.stanford.nlp.dcoref.Document;
 import edu.stanford.nlp.dcoref.Mention;
-import edu.stanford.nlp.dcoref.ScorerBCubed.BCubedType;
-import edu.stanford.nlp.dcoref.ScorerMUC;
-import edu.stanford.nlp.dcoref.ScorerPairwise;
-import edu.stanford.nlp.dcoref.ScorerBCubed;
 import edu.stanford.nlp.dcoref.Dictionaries.Animacy;
 import edu.stanford.nlp.dcoref.Dictionaries.Gender;
 import edu.stanford.nlp.dcoref.Dictionaries.Number;
@@ -63,9 +67,6 @@ public class BeamSearch implements ISearch {
     /** search depth */
     private int maximumSearch;
     
-    /** id offset */
-    private int moffset;
-    
     /** document */
     private Document mdocument;
     
@@ -75,8 +76,8 @@ public class BeamSearch implements ISearch {
     /** initial weight */
     private double[] mweight;
     
-    /** right links */
-    private Set<String> mrightLinks;
+    /** gold oracle of the training search, which tells whether the successors only contain right links */
+    private GoldOracle mgoldOracle;
     
     /** how many real search conducted by beam search */
     private int msearchStep;
@@ -99,16 +100,135 @@ public class BeamSearch implements ISearch {
     /** score type */
     private ScoreType type;
     
+    /** cluster pair features of the current search, null if the cache is disabled */
+    private ClusterPairFeatureCache featureCache;
+    
+    /** cluster pair features of the topic shared by the searches of all iterations, null if the store is disabled */
+    private FeatureStore mfeatureStore;
+    
+    /** whether evaluate the successors of a state in parallel */
+    private boolean mparallel;
+    
+    /** number of worker threads in the parallel mode */
+    private int mnoOfThreads;
+    
+    /** worker pool of the current search, null in the sequential mode */
+    private ForkJoinPool mpool;
+    
+    /** cost function of each worker thread */
+    private ThreadLocal<ICostFunction> threadCostFunction;
+    
+    /** loss function of each worker thread */
+    private ThreadLocal<ILossFunction> threadLossFunction;
+    
+    /** whether only the cluster pairs sharing a block are proposed */
+    private boolean mblocking;
+    
+    /** block types used by the blocking index */
+    private Set<String> mblockTypes;
+    
+    /** whether event clusters and entity clusters are never merged when blocking */
+    private boolean mseparateTypes;
+    
+    /** blocking index of the current document, null if the search is exhaustive */
+    private BlockingIndex mblockingIndex;
+    
+    /** scorer of the current document, used by the testing search */
+    private ContingencyScorer mscorer;
+    
+    /** closed list and generated states of the current search, null if duplicates are not detected */
+    private TranspositionTable mtable;
+    
+    /** wall-clock budget of a search in milliseconds, 0 means no budget */
+    private long mtimeBudget;
+    
+    /** start time of the current search */
+    private long mstartTime;
+    
+    /** wall-clock time of the last search in milliseconds */
+    private long msearchTime;
+    
+    /** the best state found by the current search, written into the document when the time budget stops it */
+    private State<CorefCluster> mbestState;
+    
+    /** testing search without the gold scoring and the per step output */
+    private boolean minferenceOnly;
+    
+    /** whether evaluate the final clustering of the inference-only testing search */
+    private boolean mfinalEvaluation;
+    
+    /** whether write the per step information to the log file */
+    private boolean mlogSteps;
+    
+    /** loss of the partitions, shared by the searches of all iterations, null if disabled */
+    private LossCache mlossCache;
+    
+    /** the document part of the loss cache key, the fingerprint of the gold clusters */
+    private long mdocumentKey;
+    
+    /** the writer of the search trajectories, null if the trajectories are not recorded */
+    private TrajectoryWriter mtrajectoryWriter;
+    
+    /** whether record the testing searches of the training topics for DAgger */
+    private boolean mdagger;
+    
+    /** the binary trace of the search steps, null if the steps are written to the log file */
+    private TraceWriter mtraceWriter;
+    
+    /** the search id of the current search in the trace */
+    private int mtraceSearch;
+    
+    /** the trace record of the current step, null if the step has not started */
+    private TraceWriter.Record mtraceRecord;
+    
     /** constructor */
     public BeamSearch() {
     	mBeamWidth = (Integer) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "beamWidth");
     	maximumSearch = (Integer) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "searchStep");
         mdictionary = ExperimentConstructor.mdictionary;
-        mrightLinks = new HashSet<String>();
         lossFunction = ExperimentConstructor.createLossFunction((String) ExperimentConstructor.getParameter(EecbConstants.LOSSFUNCTION, "model"));
         costFunction = ExperimentConstructor.createCostFunction((String) ExperimentConstructor.getParameter(EecbConstants.COSTFUNCTION, "model"));
         classifier = ExperimentConstructor.createClassifier((String) ExperimentConstructor.getParameter(EecbConstants.CLASSIFIER, "model"));
         type = (ScoreType) ExperimentConstructor.getParameter(EecbConstants.LOSSFUNCTION, "scoreType");
+        boolean enableFeatureCache = (Boolean) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "featureCache", false);
+        featureCache = enableFeatureCache ? new ClusterPairFeatureCache() : null;
+        mparallel = (Boolean) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "parallel", false);
+        mnoOfThreads = (Integer) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "noOfThreads", Runtime.getRuntime().availableProcessors());
+        mblocking = (Boolean) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "blocking", false);
+        String blockTypes = (String) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "blockTypes", "head,lemma,ner,synonym,thesaurus");
+        mblockTypes = new HashSet<String>(Arrays.asList(blockTypes.split(",")));
+        mseparateTypes = (Boolean) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "separateTypes", true);
+        boolean enableClosedList = (Boolean) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "closedList", false);
+        mtable = enableClosedList ? new TranspositionTable() : null;
+        mtimeBudget = ((java.lang.Number) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "timeBudget", 0)).longValue();
+        minferenceOnly = (Boolean) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "inferenceOnly", false);
+        mfinalEvaluation = (Boolean) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "finalEvaluation", true);
+        mlogSteps = true;
+        int lossCacheSize = (Integer) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "lossCacheSize", 0);
+        String lossCacheSpill = (String) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "lossCacheSpill", "");
+        mlossCache = lossCacheSize > 0 ? LossCache.getSharedCache(lossCacheSize, lossCacheSpill) : null;
+        String trajectoryPath = (String) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "trajectoryPath", "");
+        boolean aggregateTrajectory = (Boolean) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "trajectoryAggregate", false);
+        mtrajectoryWriter = trajectoryPath.isEmpty() ? null : TrajectoryWriter.getWriter(trajectoryPath, aggregateTrajectory);
+        mdagger = (Boolean) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "trajectoryDAgger", false);
+        boolean searchTrace = (Boolean) ExperimentConstructor.getParameter(EecbConstants.SEARCHMETHOD, "searchTrace", false);
+        mtraceWriter = searchTrace ? TraceWriter.getWriter(ExperimentConstructor.experimentResultFolder + "/searchtrace") : null;
+        
+        // cost function and loss function keep the features and state of one candidate, so each worker thread has its own
+        final String costFunctionModel = (String) ExperimentConstructor.getParameter(EecbConstants.COSTFUNCTION, "model");
+        final String lossFunctionModel = (String) ExperimentConstructor.getParameter(EecbConstants.LOSSFUNCTION, "model");
+        threadCostFunction = new ThreadLocal<ICostFunction>() {
+        	@Override
+        	protected ICostFunction initialValue() {
+        		return ExperimentConstructor.createCostFunction(costFunctionModel);
+        	}
+        };
+        threadLossFunction = new ThreadLocal<ILossFunction>() {
+        	@Override
+        	protected ILossFunction initialValue() {
+        		return ExperimentConstructor.createLossFunction(lossFunctionModel);
+        	}
+        };
     }
     
     public int getSearchStep() {
@@ -137,43 +257,51 @@ public class BeamSearch implements ISearch {
     
     public void setDocument(Document document){
     	mdocument = document;
-    }
-    
-    /** build the right links for the gold clusters */
-    private void initializeRightLinks() {
-    	for (CorefCluster cluster : mdocument.goldCorefClusters.values()) {
-    		int clusterSize = cluster.getCorefMentions().size();
-    		if (clusterSize == 1) continue;
-    		List<Integer> ids = new ArrayList<Integer>();
-    		for (Mention mention : cluster.getCorefMentions()) {
-    			ids.add(mention.mentionID);
-    		}
-    		
-    		for (int i = 0; i < ids.size(); i++) {
-                int iID = ids.get(i);
-                for (int j = 0; j < i; j++) {
-                	int jID = ids.get(j);
-                	mrightLinks.add(iID + "-" + jID);
-                }
-    		}
+    	mscorer = null;
+    	mblockingIndex = mblocking ? new BlockingIndex(document, mblockTypes, mseparateTypes) : null;
+    	mdocumentKey = PartitionHash.fingerprint(document.goldCorefClusters);
+    	String topic = ExperimentConstructor.getCurrentTopic() == null ? Long.toHexString(mdocumentKey) : ExperimentConstructor.getCurrentTopic();
+    	mfeatureStore = ExperimentConstructor.getFeatureStore(topic);
+    	if (featureCache != null) {
+    		featureCache.setStore(mfeatureStore);
     	}
     }
     
-    // get the neighbors of the current state
-    private Set<String> generateCandidateSets(State<CorefCluster> state) {
-        Set<String> actions = new HashSet<String>();
+    // get the neighbors of the current state, each action is encoded as a long by MergeAction
+    private long[] generateCandidateSets(State<CorefCluster> state) {
         Map<Integer, CorefCluster> clusters = state.getState();
-        List<Integer> keys = new ArrayList<Integer>();
+        int[] keys = new int[clusters.size()];
+        int index = 0;
         for (Integer key : clusters.keySet()) {
-            keys.add(key);
+            keys[index++] = key;
         }
         
-        int size = keys.size();
-        ResultOutput.writeTextFile(ExperimentConstructor.logFile, "before create children: total of clusters : " + size);
+        int size = keys.length;
+        if (mlogSteps) {
+        	ResultOutput.writeTextFile(ExperimentConstructor.logFile, "before create children: total of clusters : " + size);
+        }
+        
+        // only the pairs sharing a block, fall back to the exhaustive enumeration if no pair shares a block
+        if (mblockingIndex != null) {
+        	long[] pairs = mblockingIndex.getPairs(clusters, keys);
+        	if (pairs.length > 0) {
+        		long[] actions = new long[pairs.length];
+        		for (int i = 0; i < pairs.length; i++) {
+        			actions[i] = MergeAction.encode(keys[(int) (pairs[i] / size)], keys[(int) (pairs[i] % size)], msearchStep);
+        		}
+        		if (mlogSteps) {
+        			ResultOutput.writeTextFile(ExperimentConstructor.logFile, "the number of blocked candidate sets :" + actions.length + " out of " + (size * (size - 1) / 2));
+        		}
+        		traceCandidates(size, actions.length);
+        		return actions;
+        	}
+        }
         
         // generate the action
+        long[] actions = new long[size * (size - 1) / 2];
+        int noOfActions = 0;
         for (int i = 0; i < size; i++) {
-            Integer iID = keys.get(i);
+            int iID = keys[i];
             //CorefCluster icluster = clusters.get(iID);
             //do not deal with pronoun
             //if (icluster.corefMentions.size() == 1 && icluster.firstMention.isPronominal()) {
@@ -181,29 +309,35 @@ public class BeamSearch implements ISearch {
             //}
             
             for (int j = 0; j < i; j++) {
-                Integer jID = keys.get(j);
+                int jID = keys[j];
                 //CorefCluster jcluster = clusters.get(jID);
                 //do not deal with pronoun
                // if (jcluster.corefMentions.size() == 1 && jcluster.firstMention.isPronominal()) {
                // 	continue;
                 //}
                 
-                String action = iID + "-" + jID + "-" +  moffset;;
-                actions.add(action);
-                moffset += 1;
+                actions[noOfActions++] = MergeAction.encode(iID, jID, msearchStep);
             }
         }
         
-        ResultOutput.writeTextFile(ExperimentConstructor.logFile, "after create children: total of clusters : " + (size - 1));
-        ResultOutput.writeTextFile(ExperimentConstructor.logFile, "the number of candidate sets :" + actions.size());
+        if (mlogSteps) {
+        	ResultOutput.writeTextFile(ExperimentConstructor.logFile, "after create children: total of clusters : " + (size - 1));
+        	ResultOutput.writeTextFile(ExperimentConstructor.logFile, "the number of candidate sets :" + noOfActions);
+        }
+        traceCandidates(size, noOfActions);
         return actions;
     }
     
     // merge two clusters
     private void mergeClusters(CorefCluster to, CorefCluster from) {
         int toID = to.clusterID;
-        for (Mention m : from.corefMentions) {
-            m.corefClusterID = toID;
+        
+        // in the parallel mode, the mentions are shared by all worker threads, 
+        // their cluster ids are set by setNextDocument when the state is scored
+        if (mpool == null) {
+        	for (Mention m : from.corefMentions) {
+        		m.corefClusterID = toID;
+        	}
         }
         
         if (Constants.SHARE_ATTRIBUTES) {
@@ -253,6 +387,7 @@ public class BeamSearch implements ISearch {
             CorefCluster cpCluster = new CorefCluster(key, cluster.getCorefMentions());
             initialState.add(key, cpCluster);
         }
+        PartitionHash.hash(initialState);
     }
     
 	
@@ -306,28 +441,74 @@ public class BeamSearch implements ISearch {
         }
 	}
 	
+	/** extract the features of the cluster pair, consult the feature cache and the feature store first if they are enabled */
+	private Counter<String> extractFeatures(CorefCluster iCluster, CorefCluster jCluster) {
+		if (featureCache == null) {
+			if (mfeatureStore != null) {
+				return mfeatureStore.getFeatures(mdocument, iCluster, jCluster, false, mdictionary);
+			}
+			return Feature.getFeatures(mdocument, iCluster, jCluster, false, mdictionary);
+		}
+		
+		return featureCache.getFeatures(mdocument, iCluster, jCluster, false, mdictionary);
+	}
+	
+	/** 
+	 * the expanded state does not contain the two merged clusters any more, 
+	 * so invalidate their rows in the feature cache
+	 * 
+	 * @param indexState
+	 */
+	private void invalidateFeatureCache(State<CorefCluster> indexState) {
+		if (featureCache != null) {
+			featureCache.retain(indexState.getState().values());
+		}
+	}
+	
+	/** features are only valid for the current document, so every search starts with an empty cache */
+	private void clearFeatureCache() {
+		if (featureCache != null) {
+			featureCache.clear();
+		}
+	}
+	
+	/** print the hit rates of the feature cache, the feature store and the loss cache */
+	private void printFeatureCacheInformation() {
+		if (featureCache != null) {
+			ResultOutput.writeTextFile(ExperimentConstructor.logFile, featureCache.statistics());
+		}
+		if (mfeatureStore != null) {
+			ResultOutput.writeTextFile(ExperimentConstructor.logFile, mfeatureStore.statistics());
+		}
+		if (mlossCache != null) {
+			ResultOutput.writeTextFile(ExperimentConstructor.logFile, mlossCache.statistics());
+		}
+	}
+	
 	/** 
 	 * calculate cost score according to the weight and feature.
 	 * The cost function model is set at the beginning of the experiment
 	 * 
-	 * @param initial
+	 * @param indexState
 	 * @param action
-	 * @return
+	 * @param costFunction
+	 * @return the successor of indexState, its partition is not materialized
 	 */
-	private void calculateCostScore(State<CorefCluster> initial, String action) {
-		String[] ids = action.split("-");
-		Integer i_id = Integer.parseInt(ids[0]);
-		Integer j_id = Integer.parseInt(ids[1]);
-		CorefCluster iCluster = initial.getState().get(i_id);
+	private State<CorefCluster> calculateCostScore(State<CorefCluster> indexState, long action, ICostFunction costFunction) {
+		int i_id = MergeAction.getI(action);
+		int j_id = MergeAction.getJ(action);
+		CorefCluster iCluster = indexState.get(i_id);
 		CorefCluster cpCluster = new CorefCluster(i_id, iCluster.getCorefMentions());
-		CorefCluster jCluster = initial.getState().get(j_id);
-		Counter<String> features = Feature.getFeatures(mdocument, iCluster, jCluster, false, mdictionary);
+		CorefCluster jCluster = indexState.get(j_id);
+		Counter<String> features = extractFeatures(iCluster, jCluster);
 		
 		// merge cluster
 		mergeClusters(cpCluster, jCluster);
-		initial.remove(i_id);
-		initial.remove(j_id);
-		initial.add(i_id, cpCluster);
+		State<CorefCluster> initial = State.successor(indexState, action, cpCluster);
+		long iHash = indexState.getClusterHash(i_id);
+		long jHash = indexState.getClusterHash(j_id);
+		initial.setClusterHash(i_id, iHash ^ jHash);
+		initial.setFingerprint(PartitionHash.merge(indexState.getFingerprint(), iHash, jHash));
 		
 		// calculate the cost function for the state
 		costFunction.setFeatures(features);
@@ -335,7 +516,106 @@ public class BeamSearch implements ISearch {
 		double costScore = costFunction.calculateCostFunction();
 		initial.setFeatures(features);
 		initial.setCostScore(costScore);
-		initial.setID(action);
+		return initial;
+	}
+	
+	/**
+	 * apply the action and calculate its cost score, and its loss score if needed. The successor
+	 * is returned as a compact descriptor, its partition is not materialized for the loss function, 
+	 * which scores the merge from the running sums of the expanded state
+	 * 
+	 * @param indexState
+	 * @param action
+	 * @param costFunction
+	 * @param lossFunction
+	 * @param computeLoss
+	 * @return
+	 */
+	private State<CorefCluster> evaluateSuccessor(State<CorefCluster> indexState, long action, ICostFunction costFunction, 
+			ILossFunction lossFunction, boolean computeLoss) {
+		State<CorefCluster> initial = calculateCostScore(indexState, action, costFunction);
+		
+		if (computeLoss) {
+			long key = LossCache.key(mdocumentKey, initial.getFingerprint(), type);
+			LossCache.Entry cached = mlossCache == null ? null : mlossCache.get(key);
+			if (cached != null) {
+				initial.setScore(cached.getScore());
+				initial.setScoreDetailInformation(cached.getDetail());
+				initial.compact();
+				return initial;
+			}
+			
+			// delta scoring from the sums of the expanded state, the successor is not materialized
+			lossFunction.setDocument(mdocument);
+			lossFunction.calculateMergeLossFunction(indexState, MergeAction.getI(action), MergeAction.getJ(action));
+			initial.setScore(lossFunction.getLossScore());
+			initial.setScoreDetailInformation(lossFunction.getDetailScoreInformation());
+			if (mlossCache != null) {
+				mlossCache.put(key, initial.getScore(), initial.getScoreDetailInformation());
+			}
+			initial.compact();
+		}
+		
+		return initial;
+	}
+	
+	/**
+	 * evaluate all successors of the state. In the parallel mode, the actions are split into chunks
+	 * and evaluated by the worker pool. Either way, the successors are returned in the order 
+	 * of the actions, so the beam is filled in the same order as the sequential search
+	 * 
+	 * @param indexState
+	 * @param actions
+	 * @param computeLoss
+	 * @return
+	 * @throws Exception
+	 */
+	private List<State<CorefCluster>> evaluateSuccessors(final State<CorefCluster> indexState, final long[] actions, final boolean computeLoss) throws Exception {
+		List<State<CorefCluster>> successors = new ArrayList<State<CorefCluster>>(actions.length);
+		if (mpool == null) {
+			for (long action : actions) {
+				successors.add(evaluateSuccessor(indexState, action, costFunction, lossFunction, computeLoss));
+			}
+			return successors;
+		}
+		
+		int noOfChunks = Math.min(actions.length, mnoOfThreads * 4);
+		List<Callable<List<State<CorefCluster>>>> tasks = new ArrayList<Callable<List<State<CorefCluster>>>>();
+		for (int chunk = 0; chunk < noOfChunks; chunk++) {
+			final int begin = (int) ((long) actions.length * chunk / noOfChunks);
+			final int end = (int) ((long) actions.length * (chunk + 1) / noOfChunks);
+			tasks.add(new Callable<List<State<CorefCluster>>>() {
+				public List<State<CorefCluster>> call() {
+					ICostFunction workerCostFunction = threadCostFunction.get();
+					ILossFunction workerLossFunction = threadLossFunction.get();
+					List<State<CorefCluster>> chunkSuccessors = new ArrayList<State<CorefCluster>>(end - begin);
+					for (int i = begin; i < end; i++) {
+						chunkSuccessors.add(evaluateSuccessor(indexState, actions[i], workerCostFunction, workerLossFunction, computeLoss));
+					}
+					return chunkSuccessors;
+				}
+			});
+		}
+		
+		for (Future<List<State<CorefCluster>>> future : mpool.invokeAll(tasks)) {
+			successors.addAll(future.get());
+		}
+		return successors;
+	}
+	
+	/** create the worker pool if the parallel mode is enabled */
+	private void startPool() {
+		if (mparallel) {
+			mpool = new ForkJoinPool(mnoOfThreads);
+		}
+	}
+	
+	/** shut down the worker pool */
+	private void shutdownPool() {
+		if (mpool != null) {
+			mpool.shutdown();
+			mpool = null;
+		}
 	}
 	
 	/**
@@ -352,16 +632,21 @@ public class BeamSearch implements ISearch {
 	public void trainingSearch() {
 		
 		// define variables
-		initializeRightLinks();
-		moffset = 2;
+		mgoldOracle = new GoldOracle(mdocument);
+		clearFeatureCache();
+		startPool();
+		startClock();
+		beginTrace("training");
+		mlogSteps = mtraceWriter == null;
 		msearchStep = 0;
 		mviolations = 0;
+		String stopReason = "beam";
 		Double globalScore = 0.0;
 		Double globalCostScore = 0.0;
 		String globalDetailInformation = "";		
 		
 		// beam and closed list
-		//Set<State<CorefCluster>> closedList = new HashSet<State<CorefCluster>>();
+		clearTranspositionTable();
 		FixedSizePriorityQueue<State<CorefCluster>> beam = new FixedSizePriorityQueue<State<CorefCluster>>(mBeamWidth);
 		State<CorefCluster> initialState = new State<CorefCluster>();
 		initialize(mdocument, initialState);
@@ -369,26 +654,39 @@ public class BeamSearch implements ISearch {
 		double[] localScores = lossFunction.getMetricScore();
 		initialState.setScore(localScores);
 		initialState.setScoreDetailInformation(lossFunction.getDetailScoreInformation());
-		beam.add(initialState, localScores[0]);
+		addToBeam(beam, initialState, localScores[0]);
+		TrajectoryWriter.Episode episode = ExperimentConstructor.isUpdateWeight() ? startEpisode(initialState, TrajectoryWriter.LOSS_POLICY) : null;
 		
 		// the best output y^{*}_{i} uncovered so far evaluated by the loss function
 		State<CorefCluster> bestState = new State<CorefCluster>();
 		State<CorefCluster> previousBestState = new State<CorefCluster>();
+		mbestState = initialState;
 		
 		// keep search
 		while (beam.size() != 0 && (msearchStep < maximumSearch)) {
-			ResultOutput.writeTextFile(ExperimentConstructor.logFile, "action " + msearchStep);
+			if (deadlineExpired()) {
+				stopReason = "deadline";
+				break;
+			}
+			beginTraceStep();
+			if (mlogSteps) {
+				ResultOutput.writeTextFile(ExperimentConstructor.logFile, "action " + msearchStep);
+			}
 			
 			// the state with the highest score
-			State<CorefCluster> indexState = beam.next();
+			State<CorefCluster> indexState = nextFromBeam(beam);
+			indexState.detach();
 			double[] localScore = indexState.getScore();
 			double score = localScore[0];
 			String information = indexState.getScoreDetailInformation();
-			printScoreInformation(localScore, type);
-			String id = indexState.getID();
-			if (!id.equals("")) {
-				CorefCluster cluster = indexState.getState().get(Integer.parseInt(id.split("-")[0]));
-				ResultOutput.writeTextFile(ExperimentConstructor.logFile, cluster.toString());
+			traceState(indexState, localScore);
+			if (mlogSteps) {
+				printScoreInformation(localScore, type);
+				long id = indexState.getID();
+				if (id != MergeAction.NONE) {
+					CorefCluster cluster = indexState.getState().get(MergeAction.getI(id));
+					ResultOutput.writeTextFile(ExperimentConstructor.logFile, cluster.toString());
+				}
 			}
 			
 			// whether continue
@@ -399,75 +697,81 @@ public class BeamSearch implements ISearch {
 				// best state
 				previousBestState = bestState;
 				bestState = indexState;
+				mbestState = indexState;
 				globalCostScore = indexState.getCostScore();
 			}
-			if (globalScore > score) break;
-			ResultOutput.writeTextFile(ExperimentConstructor.logFile, "global " + type.toString() +" F1 score: " + globalScore.toString());
-			ResultOutput.writeTextFile(ExperimentConstructor.mscorePath, globalScore.toString() + " " + globalCostScore);
-			ResultOutput.writeTextFile(ExperimentConstructor.mScoreDetailPath, globalDetailInformation);
+			if (globalScore > score) {
+				stopReason = "score";
+				break;
+			}
+			if (mlogSteps) {
+				ResultOutput.writeTextFile(ExperimentConstructor.logFile, "global " + type.toString() +" F1 score: " + globalScore.toString());
+			}
+			traceBest(globalScore, globalCostScore);
+			recordScores(globalScore, globalCostScore, globalDetailInformation);
 			
 			// first check whether it is a goal state
 			if (globalScore == 1.0) {
 				regenerateFeatures(indexState);
 				reachGoldState();
+				stopReason = "goal";
 				break;
 			}
 
 			// add the node to the explored list
-			//closedList.add(indexState);
+			closeState(indexState);
 			
 			// update the feature according to new state
 			regenerateFeatures(indexState);
+			invalidateFeatureCache(indexState);
 			
 			try {
-				Set<String> actions = generateCandidateSets(indexState);
+				long[] actions = generateCandidateSets(indexState);
 				PriorityQueue<State<CorefCluster>> statesLossFunction = new PriorityQueue<State<CorefCluster>>();
-				Map<String, State<CorefCluster>> states = new HashMap<String, State<CorefCluster>>();
-				for (String action : actions) {
-					// make a copy of indexState
-					State<CorefCluster> initial = new State<CorefCluster>();
-					for (Integer key : indexState.getState().keySet()) {
-						initial.add(key, indexState.getState().get(key));
-					}
+				Map<Long, State<CorefCluster>> states = new HashMap<Long, State<CorefCluster>>();
+				List<State<CorefCluster>> candidates = new ArrayList<State<CorefCluster>>();
+				List<State<CorefCluster>> successors = evaluateSuccessors(indexState, actions, true);
+				for (int i = 0; i < actions.length; i++) {
+					long action = actions[i];
+					State<CorefCluster> initial = successors.get(i);
+					boolean closedContains = detectClosedDuplicate(initial);
 					
-					calculateCostScore(initial, action);
-					//boolean beamContains = detectBeamDuplicate(beam, initial);
-					//boolean closedContains = detectClosedDuplicate(closedList, initial);
+					if (closedContains) continue;
 					
-					//if (closedContains) continue;
+					double[] stateScore = initial.getScore();
 					
-					lossFunction.setState(initial);
-					lossFunction.calculateLossFunction();
-					double[] stateScore = lossFunction.getLossScore();
-					initial.setScore(stateScore);
-					initial.setScoreDetailInformation(lossFunction.getDetailScoreInformation());
-					
-					
-					if (beam.isEmpty()) {
-						beam.add(initial, stateScore[0]);
-					} else {
-						double highestPriority = beam.peek().getScore()[0];
-						if (highestPriority == stateScore[0]) {
-							double beamcostscore = beam.peek().getCostScore();
-							if (initial.getCostScore() > beamcostscore) {
-								State<CorefCluster> state = beam.next();
-								beam.add(initial, highestPriority);
-							}
+					// the same partition reached by another merge order is only put into the beam once
+					boolean beamContains = detectBeamDuplicate(initial);
+					if (!beamContains) {
+						if (beam.isEmpty()) {
+							addToBeam(beam, initial, stateScore[0]);
 						} else {
-							beam.add(initial, stateScore[0]);
+							double highestPriority = beam.peek().getScore()[0];
+							if (highestPriority == stateScore[0]) {
+								double beamcostscore = beam.peek().getCostScore();
+								if (initial.getCostScore() > beamcostscore) {
+									nextFromBeam(beam);
+									addToBeam(beam, initial, highestPriority);
+								}
+							} else {
+								addToBeam(beam, initial, stateScore[0]);
+							}
 						}
 					}
 					
 					statesLossFunction.add(initial, stateScore[0]);
 					states.put(action, initial);
+					candidates.add(initial);
 				}
 				
 				/** set classifier information */
-				if (ExperimentConstructor.updateWeight) {
+				if (ExperimentConstructor.isUpdateWeight()) {
+					mgoldOracle.setState(indexState, msearchStep);
+					recordStep(episode, globalScore, candidates, statesLossFunction, beam, bestState, previousBestState);
 					classifier.setBeam(beam);
 					classifier.setBestState(bestState);
 					classifier.setPreviousBestState(previousBestState);
-					classifier.setRightLinks(mrightLinks);
+					classifier.setGoldOracle(mgoldOracle);
 					classifier.setState(states);
 					classifier.setStatesLossFunction(statesLossFunction);
 					classifier.setWeight(mweight);
@@ -494,7 +798,16 @@ public class BeamSearch implements ISearch {
 			msearchStep++;
 		}
 		
+		shutdownPool();
+		endTrace();
+		finishEpisode(episode);
+		reportLatency("training", stopReason);
+		if (stopReason.equals("deadline")) {
+			regenerateFeatures(mbestState);
+		}
 		ResultOutput.writeTextFile(ExperimentConstructor.logFile, "the total number of violations is :" + mviolations);
+		printFeatureCacheInformation();
+		printTranspositionTableInformation();
 	}
 	
 	private boolean isAllZeroFeature(Counter<String> features){
@@ -518,11 +831,11 @@ public class BeamSearch implements ISearch {
 	 * @param states
 	 * @param index
 	 */
-	private void outputFeature(Map<String, State<CorefCluster>> states, int index) {
-		String filePath = ExperimentConstructor.currentExperimentFolder + "/" + index;
-		for (String key : states.keySet()) {
+	private void outputFeature(Map<Long, State<CorefCluster>> states, int index) {
+		String filePath = ExperimentConstructor.getCurrentExperimentFolder() + "/" + index;
+		for (Long key : states.keySet()) {
 			StringBuffer sb = new StringBuffer();
-			sb.append(key + ",");
+			sb.append(MergeAction.toString(key) + ",");
 			Counter<String> features = states.get(key).getFeatures();
 			for (String feature : Feature.featuresName){
 				double value = features.getCount(feature);
@@ -536,63 +849,135 @@ public class BeamSearch implements ISearch {
 		}
 	}
 	
-	/**
-	 * calculate F1 score
+	/** 
+	 * score the state by MUC, BCubed and CEAF in one pass, print the scores and record the score details in the result store
+	 * and the trace
 	 * 
 	 * @param mstate
-	 * @param mtype
-	 * @return
+	 * @param log whether print the scores to the log file
 	 */
-	private double[] calculateF1Score(State<CorefCluster> mstate, ScoreType mtype) {
-		Document documentState = new Document();
-		DocumentMerge dm = new DocumentMerge(mdocument, documentState);
-		dm.addDocument();
-    	setNextDocument(documentState, mstate);
-    	double[] scores = calculateF1(documentState, mtype);
-    	return scores;
-	}
-	
-	private double[] calculateF1(Document document, ScoreType type) {
-        double F1 = 0.0;
-        CorefScorer score;
-        String path = "";
-        switch(type) {
-            case MUC:
-                score = new ScorerMUC();
-                path = ExperimentConstructor.mMUCScoreDetailPath;
-                break;
-            case BCubed:
-                score = new ScorerBCubed(BCubedType.Bconll);
-                path = ExperimentConstructor.mBcubedScoreDetailPath;
-                break;
-            case CEAF:
-                score = new ScorerCEAF();
-                path = ExperimentConstructor.mCEAFScoreDetailPath;
-                break;
-            case Pairwise:
-                score = new ScorerPairwise();
-                break;
-            default:
-                score = new ScorerMUC();
-                break;
-        }
-        
-        score.calculateScore(document);
-        F1 = score.getF1();
-        double precision = score.getPrecision();
-        double recall = score.getRecall();
-        
-        double precisionNumSum = score.precisionNumSum;
-        double precisionDenSum = score.precisionDenSum;
-        double recallNumSum = score.recallNumSum;
-        double recallDenSum = score.recallDenSum;
-        
-        String information = precisionNumSum + " " + precisionDenSum + " " + recallNumSum + " " + recallDenSum;
-        ResultOutput.writeTextFile(path, information);
-        
-        double[] result = {DoubleOperation.transformNaN(F1), DoubleOperation.transformNaN(precision), DoubleOperation.transformNaN(recall)};
-        return result;
-    }
+	private void printMetricScores(State<CorefCluster> mstate, boolean log) {
+		if (mscorer == null) {
+			mscorer = new ContingencyScorer(mdocument);
+		}
+		mscorer.score(mstate.getState());
+		
+		// in the order of ResultStore.METRICS and TraceWriter.METRICS
+		ScoreType[] types = {ScoreType.MUC, ScoreType.BCubed, ScoreType.CEAF};
+		for (int i = 0; i < types.length; i++) {
+			double[] scores = mscorer.getScore(types[i]);
+			if (log) {
+				printScoreInformation(scores, types[i]);
+			}
+			if (mtraceRecord != null) {
+				System.arraycopy(scores, 0, mtraceRecord.metrics[i], 0, 3);
+			}
+			recordScore(ResultStore.METRICS[i], ResultStore.parse(mscorer.getDetailInformation(types[i])));
+		}
+	}
+	
+	/** start the search in the trace */
+	private void beginTrace(String kind) {
+		if (mtraceWriter == null) return;
+		mtraceSearch = mtraceWriter.beginSearch(kind, ExperimentConstructor.getCurrentPhase(), ExperimentConstructor.getCurrentTopic(), 
+				type.toString(), ExperimentConstructor.getCurrentIteration());
+		mtraceRecord = null;
+	}
+	
+	/** start the trace record of the current step, the record of the previous step is written */
+	private void beginTraceStep() {
+		if (mtraceWriter == null) return;
+		endTraceStep();
+		mtraceRecord = new TraceWriter.Record();
+		mtraceRecord.reset(mtraceSearch, msearchStep);
+		mtraceRecord.elapsed = System.currentTimeMillis() - mstartTime;
+	}
+	
+	/** write the trace record of the current step */
+	private void endTraceStep() {
+		if (mtraceRecord != null) {
+			mtraceWriter.write(mtraceRecord);
+			mtraceRecord = null;
+		}
+	}
+	
+	/** write the last step of the search and flush the trace */
+	private void endTrace() {
+		if (mtraceWriter == null) return;
+		endTraceStep();
+		mtraceWriter.flush();
+	}
+	
+	/** trace the expanded state and its loss score, null if the loss is not computed */
+	private void traceState(State<CorefCluster> indexState, double[] lossScore) {
+		if (mtraceRecord == null) return;
+		if (lossScore != null) {
+			System.arraycopy(lossScore, 0, mtraceRecord.loss, 0, 3);
+		}
+		mtraceRecord.costScore = indexState.getCostScore();
+		long id = indexState.getID();
+		mtraceRecord.action = id;
+		if (id != MergeAction.NONE) {
+			mtraceRecord.mergedSize = indexState.get(MergeAction.getI(id)).getCorefMentions().size();
+		}
+	}
+	
+	/** trace the best loss and cost score so far */
+	private void traceBest(double bestScore, double bestCostScore) {
+		if (mtraceRecord == null) return;
+		mtraceRecord.bestScore = bestScore;
+		mtraceRecord.bestCostScore = bestCostScore;
+	}
+	
+	/** trace the number of clusters of the expanded state and its candidates */
+	private void traceCandidates(int noOfClusters, int noOfCandidates) {
+		if (mtraceRecord == null) return;
+		mtraceRecord.noOfClusters = noOfClusters;
+		mtraceRecord.noOfCandidates = noOfCandidates;
+	}
+	
+	/**
+	 * start the episode of the search if the trajectories are recorded
+	 * 
+	 * @param initialState the initial state, with its loss score
+	 * @param policy how the beam is ordered, see {@link TrajectoryWriter}
+	 * @return null if the trajectories are not recorded
+	 */
+	private TrajectoryWriter.Episode startEpisode(State<CorefCluster> initialState, byte policy) {
+		if (mtrajectoryWriter == null) return null;
+		return new TrajectoryWriter.Episode(ExperimentConstructor.getCurrentTopic(), ExperimentConstructor.getCurrentIteration(), mBeamWidth, policy, initialState);
+	}
+	
+	/** record what the classifier is given at the current step, the gold oracle should be set to the expanded state */
+	private void recordStep(TrajectoryWriter.Episode episode, double bestScore, List<State<CorefCluster>> candidates, PriorityQueue<State<CorefCluster>> statesLossFunction,
+			FixedSizePriorityQueue<State<CorefCluster>> beam, State<CorefCluster> bestState, State<CorefCluster> previousBestState) {
+		if (episode == null) return;
+		boolean[] good = new boolean[candidates.size()];
+		for (int i = 0; i < candidates.size(); i++) {
+			good[i] = mgoldOracle.isGood(candidates.get(i));
+		}
+		episode.addStep(msearchStep, bestScore, candidates, good, statesLossFunction, beam, bestState, previousBestState);
+	}
+	
+	/** write the episode of the search to the trajectory file */
+	private void finishEpisode(TrajectoryWriter.Episode episode) {
+		if (episode != null && episode.getNoOfSteps() > 0) {
+			mtrajectoryWriter.write(episode);
+		}
+	}
+	
+	/** record the F1 and the cost score, and the loss detail information of the current step */
+	private void recordScores(double score, double costScore, String detailInformation) {
+		recordScore(ResultStore.SCORE, new double[] {score, costScore});
+		recordScore(ResultStore.LOSS, ResultStore.parse(detailInformation));
+	}
+	
+	/** record the values of the metric of the current step in the result store of the experiment */
+	private void recordScore(String metric, double[] values) {
+		if (ExperimentConstructor.getCurrentPhase() == null) return;
+		ExperimentConstructor.getResultStore().append(ExperimentConstructor.getCurrentPhase(), ExperimentConstructor.getCurrentTopic(), 
+				ExperimentConstructor.getCurrentIteration(), msearchStep, metric, values);
+	}
 	
 	
 	// apply the weight to guide the search
@@ -607,69 +992,121 @@ public class BeamSearch implements ISearch {
 		// begin time
 		ResultOutput.writeTextFile(ExperimentConstructor.logFile, "do testing");
 		ResultOutput.writeTextFile(ExperimentConstructor.logFile, ResultOutput.printStructredModel(mweight, Feature.featuresName));
-		moffset = 2;
+		startClock();
+		beginTrace("testing");
+		mlogSteps = !minferenceOnly && mtraceWriter == null;
 		msearchStep = 0;
+		clearFeatureCache();
+		startPool();
+		String stopReason = "beam";
 		
 		double globalCostScore = 0.0;
 		double stopscore = 0.0;
 		// closed list to track duplicate method
-		//Set<State<CorefCluster>> closedList = new HashSet<State<CorefCluster>>();
+		clearTranspositionTable();
 		FixedSizePriorityQueue<State<CorefCluster>> beam = new FixedSizePriorityQueue<State<CorefCluster>>(mBeamWidth);
 		State<CorefCluster> initialState = new State<CorefCluster>();
 		initialize(mdocument, initialState);
-		beam.add(initialState, 0.0);
+		addToBeam(beam, initialState, 0.0);
+		mbestState = initialState;
+		
+		// the state of mdocument, the last expanded state
+		State<CorefCluster> finalState = initialState;
+		
+		// DAgger: the states expanded by the weight are labeled by the loss function and the gold oracle
+		TrajectoryWriter.Episode episode = null;
+		State<CorefCluster> lossBestState = new State<CorefCluster>();
+		State<CorefCluster> lossPreviousBestState = new State<CorefCluster>();
+		double lossBestScore = 0.0;
+		if (mtrajectoryWriter != null && mdagger && !"test".equals(ExperimentConstructor.getCurrentPhase())) {
+			mgoldOracle = new GoldOracle(mdocument);
+			lossFunction.setDocument(mdocument);
+			initialState.setScore(lossFunction.getMetricScore());
+			episode = startEpisode(initialState, TrajectoryWriter.COST_POLICY);
+		}
 		
 		while(beam.size() != 0 && (msearchStep < maximumSearch)) {
-			ResultOutput.writeTextFile(ExperimentConstructor.logFile, "action " + msearchStep);
-			
+			if (deadlineExpired()) {
+				stopReason = "deadline";
+				break;
+			}
 			// the state with the highest cost score and print its related information
-			State<CorefCluster> indexState = beam.next();
-			lossFunction.setDocument(mdocument);
-			lossFunction.setState(initialState);
-			double[] scores = lossFunction.getMetricScore();
-			printScoreInformation(scores, type);
-			printScoreInformation(calculateF1Score(indexState, ScoreType.MUC), ScoreType.MUC);
-			printScoreInformation(calculateF1Score(indexState, ScoreType.BCubed), ScoreType.BCubed);
-			printScoreInformation(calculateF1Score(indexState, ScoreType.CEAF), ScoreType.CEAF);
-			ResultOutput.writeTextFile(ExperimentConstructor.logFile, type + " F1 score " + scores[0]);
-			ResultOutput.writeTextFile(ExperimentConstructor.mscorePath, Double.toString(scores[0]) + " " + indexState.getCostScore());
-			ResultOutput.writeTextFile(ExperimentConstructor.mScoreDetailPath, lossFunction.getDetailScoreInformation());
+			beginTraceStep();
+			State<CorefCluster> indexState = nextFromBeam(beam);
+			indexState.detach();
+			double[] scores = null;
+			if (!minferenceOnly) {
+				if (mlogSteps) {
+					ResultOutput.writeTextFile(ExperimentConstructor.logFile, "action " + msearchStep);
+				}
+				lossFunction.setDocument(mdocument);
+				lossFunction.setState(initialState);
+				scores = lossFunction.getMetricScore();
+				if (mlogSteps) {
+					printScoreInformation(scores, type);
+				}
+				printMetricScores(indexState, mlogSteps);
+				if (mlogSteps) {
+					ResultOutput.writeTextFile(ExperimentConstructor.logFile, type + " F1 score " + scores[0]);
+				}
+				recordScores(scores[0], indexState.getCostScore(), lossFunction.getDetailScoreInformation());
+			}
+			traceState(indexState, scores);
 			
 			if (globalCostScore < indexState.getCostScore()) {
 				globalCostScore = indexState.getCostScore();
 				stopscore = globalCostScore / ExperimentConstructor.stoppingRate;
+				mbestState = indexState;
 			}
+			traceBest(Double.NaN, globalCostScore);
 			
 			if (ExperimentConstructor.stoppingCriterion) {
 				if ((indexState.getCostScore() < stopscore)) {
+					stopReason = "criterion";
 					break;
 				}
 			}
 			
+			if (episode != null && indexState.getScore()[0] >= lossBestScore) {
+				lossBestScore = indexState.getScore()[0];
+				lossPreviousBestState = lossBestState;
+				lossBestState = indexState;
+			}
+			
 			double localScore = indexState.getCostScore();
-			ResultOutput.writeTextFile(ExperimentConstructor.logFile, type.toString() +" Cost score: " + localScore);
+			if (mlogSteps) {
+				ResultOutput.writeTextFile(ExperimentConstructor.logFile, type.toString() +" Cost score: " + localScore);
+			}
 			
-			//closedList.add(indexState);
+			closeState(indexState);
 			regenerateFeatures(indexState);  // update the mdocument
+			invalidateFeatureCache(indexState);
+			finalState = indexState;
 			
 			try {
 				/** get the candidate lists*/
-				Set<String> actions = generateCandidateSets(indexState);
+				long[] actions = generateCandidateSets(indexState);
 				List<Double> costScores = new ArrayList<Double>();
-				for (String action : actions) {
-					State<CorefCluster> initial = new State<CorefCluster>();
-					for (Integer key : indexState.getState().keySet()) {
-						initial.add(key, indexState.getState().get(key));
-					}
-					
-					calculateCostScore(initial, action);
+				List<State<CorefCluster>> candidates = new ArrayList<State<CorefCluster>>();
+				PriorityQueue<State<CorefCluster>> statesLossFunction = new PriorityQueue<State<CorefCluster>>();
+				List<State<CorefCluster>> successors = evaluateSuccessors(indexState, actions, episode != null);
+				for (State<CorefCluster> initial : successors) {
 					costScores.add(initial.getCostScore());
-					//boolean closedContains = detectClosedDuplicate(closedList, initial);
+					boolean closedContains = detectClosedDuplicate(initial);
 					
-					//if (closedContains) continue;
+					if (closedContains || detectBeamDuplicate(initial)) continue;
 					
-	            	beam.add(initial, initial.getCostScore());
-				}				
+	            	addToBeam(beam, initial, initial.getCostScore());
+	            	if (episode != null) {
+	            		candidates.add(initial);
+	            		statesLossFunction.add(initial, initial.getScore()[0]);
+	            	}
+				}
+				
+				if (episode != null) {
+					mgoldOracle.setState(indexState, msearchStep);
+					recordStep(episode, lossBestScore, candidates, statesLossFunction, beam, lossBestState, lossPreviousBestState);
+				}
 				
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -678,6 +1115,23 @@ public class BeamSearch implements ISearch {
 			
 			msearchStep++;			
 		}
+		
+		shutdownPool();
+		endTrace();
+		finishEpisode(episode);
+		reportLatency("testing", stopReason);
+		// in both modes, the final clustering is the last expanded state, which is kept in mdocument,
+		// not the state with the highest cost score, so the inference-only mode ends as the evaluated mode.
+		// When the time budget stops the search, the last expanded state is arbitrary, so the best state is kept
+		if (stopReason.equals("deadline")) {
+			regenerateFeatures(mbestState);
+			finalState = mbestState;
+		}
+		if (minferenceOnly && mfinalEvaluation) {
+			evaluateFinalState(finalState);
+		}
+		printFeatureCacheInformation();
+		printTranspositionTableInformation();
 	}
 	
 	/**
@@ -696,77 +1150,101 @@ public class BeamSearch implements ISearch {
 		return allNegative;
 	}
 	
+	/** score the final state of the inference-only testing search, write the same information as one testing step */
+	private void evaluateFinalState(State<CorefCluster> finalState) {
+		lossFunction.setDocument(mdocument);
+		double[] scores = lossFunction.getMetricScore();
+		printScoreInformation(scores, type);
+		printMetricScores(finalState, true);
+		ResultOutput.writeTextFile(ExperimentConstructor.logFile, "final " + type + " F1 score " + scores[0]);
+		recordScores(scores[0], finalState.getCostScore(), lossFunction.getDetailScoreInformation());
+	}
+	
+	/** start the clock of a search */
+	private void startClock() {
+		mstartTime = System.currentTimeMillis();
+		msearchTime = 0;
+	}
+	
+	/** whether the time budget of the current search is used up */
+	private boolean deadlineExpired() {
+		return mtimeBudget > 0 && System.currentTimeMillis() - mstartTime >= mtimeBudget;
+	}
+	
+	/**
+	 * record the latency of the search in the log file and the latency file of the topic
+	 * 
+	 * @param phase
+	 * @param stopReason beam, steps, deadline, score, goal or criterion
+	 */
+	private void reportLatency(String phase, String stopReason) {
+		msearchTime = System.currentTimeMillis() - mstartTime;
+		if (stopReason.equals("beam") && msearchStep >= maximumSearch) {
+			stopReason = "steps";
+		}
+		String record = phase + " " + msearchStep + " " + msearchTime + " " + stopReason;
+		ResultOutput.writeTextFile(ExperimentConstructor.logFile, "search latency (phase steps milliseconds stop) : " + record);
+		if (ExperimentConstructor.getCurrentExperimentFolder() != null) {
+			ResultOutput.writeTextFile(ExperimentConstructor.getCurrentExperimentFolder() + "/search-latency", record);
+		}
+	}
+	
+	/** print the number of duplicate states */
+	private void printTranspositionTableInformation() {
+		if (mtable != null) {
+			ResultOutput.writeTextFile(ExperimentConstructor.logFile, "the number of duplicate states : " + mtable.getDuplicates());
+		}
+	}
+	
+	/** clear the transposition table at the beginning of a search */
+	private void clearTranspositionTable() {
+		if (mtable != null) {
+			mtable.clear();
+		}
+	}
+	
+	/** add the expanded state to the closed list */
+	private void closeState(State<CorefCluster> indexState) {
+		if (mtable != null) {
+			mtable.close(indexState.getFingerprint());
+		}
+	}
+	
 	/** whether the two nodes are the same node */
 	private boolean detectSameNode(State<CorefCluster> visited, State<CorefCluster> index) {
-		boolean same = false;
-		Map<Integer, CorefCluster> visitedCorefClusters = visited.getState();
-		Map<Integer, CorefCluster> indexCorefClusters = index.getState();
-		ScorerCEAF score = new ScorerCEAF();
-		if (visitedCorefClusters.size() != indexCorefClusters.size()) {
-			return same;
-		}
-		// maybe change
-		double precisionNumSum = score.scoreHelper(visitedCorefClusters, indexCorefClusters);
-		double precision = score.scoreHelper(visitedCorefClusters, visitedCorefClusters);
-		double recallNumSum = score.scoreHelper(visitedCorefClusters, indexCorefClusters);
-		double recall = score.scoreHelper(indexCorefClusters, indexCorefClusters);
-		if ((precisionNumSum == precision) && (recallNumSum == recall)) {
-			same = true;
-		}
-		return same;
-	}
-	
-	
-	private boolean detectBeamDuplicate(FixedSizePriorityQueue<State<CorefCluster>> beam, State<CorefCluster> index) {
-		boolean duplciate = false;
-		ScorerCEAF score = new ScorerCEAF();
-		FixedSizePriorityQueue<State<CorefCluster>> beamcopy = new FixedSizePriorityQueue<State<CorefCluster>>(mBeamWidth);
-		while (!beam.isEmpty()) {
-			State<CorefCluster> visited = beam.next();
-			Map<Integer, CorefCluster> visitedCorefClusters = visited.getState();
-			Map<Integer, CorefCluster> indexCorefClusters = index.getState();
-			if (visitedCorefClusters.size() != indexCorefClusters.size()) continue;
-			// maybe change
-			double precisionNumSum = score.scoreHelper(visitedCorefClusters, indexCorefClusters);
-			double precision = score.scoreHelper(visitedCorefClusters, visitedCorefClusters);
-			double recallNumSum = score.scoreHelper(visitedCorefClusters, indexCorefClusters);
-			double recall = score.scoreHelper(indexCorefClusters, indexCorefClusters);
-			if ((precisionNumSum == precision) && (recallNumSum == recall)) {
-				duplciate = true;
-				break;
+		return visited.size() == index.size() && visited.getFingerprint() == index.getFingerprint();
+	}
+	
+	/** whether the same partition is in the beam now */
+	private boolean detectBeamDuplicate(State<CorefCluster> index) {
+		if (mtable == null) return false;
+		return mtable.isOpen(index.getFingerprint());
+	}
+	
+	/** put the state into the beam, the state which does not fit into the beam any more leaves the open list */
+	private void addToBeam(FixedSizePriorityQueue<State<CorefCluster>> beam, State<CorefCluster> state, double priority) {
+		State<CorefCluster> evicted = beam.addWithEviction(state, priority);
+		if (mtable != null) {
+			mtable.open(state.getFingerprint());
+			if (evicted != null) {
+				mtable.release(evicted.getFingerprint());
 			}
-			
-			beamcopy.add(visited, visited.getScore()[0]);
-		}
-		
-		while (!beamcopy.isEmpty()) {
-			State<CorefCluster> cluster = beamcopy.next();
-			beam.add(cluster, cluster.getScore()[0]);
 		}
-		
-		return duplciate;
 	}
 	
+	/** take the state with the highest priority out of the beam, it leaves the open list */
+	private State<CorefCluster> nextFromBeam(FixedSizePriorityQueue<State<CorefCluster>> beam) {
+		State<CorefCluster> state = beam.next();
+		if (mtable != null) {
+			mtable.release(state.getFingerprint());
+		}
+		return state;
+	}
 	
 	// detect the duplicate nodes
-	private boolean detectClosedDuplicate(Set<State<CorefCluster>> closedList, State<CorefCluster> index) {
-		boolean duplciate = false;
-		ScorerCEAF score = new ScorerCEAF();
-		for (State<CorefCluster> visited : closedList) {
-			Map<Integer, CorefCluster> visitedCorefClusters = visited.getState();
-			Map<Integer, CorefCluster> indexCorefClusters = index.getState();
-			if (visitedCorefClusters.size() != indexCorefClusters.size()) continue;
-			// maybe change
-			double precisionNumSum = score.scoreHelper(visitedCorefClusters, indexCorefClusters);
-			double precision = score.scoreHelper(visitedCorefClusters, visitedCorefClusters);
-			double recallNumSum = score.scoreHelper(visitedCorefClusters, indexCorefClusters);
-			double recall = score.scoreHelper(indexCorefClusters, indexCorefClusters);
-			if ((precisionNumSum == precision) && (recallNumSum == recall)) {
-				duplciate = true;
-				break;
-			}
-		}
-		return duplciate;
+	private boolean detectClosedDuplicate(State<CorefCluster> index) {
+		if (mtable == null) return false;
+		return mtable.isClosed(index.getFingerprint());
 	}
 	
 }
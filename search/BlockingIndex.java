@@ -0,0 +1,177 @@
+package edu.oregonstate.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.oregonstate.experiment.ExperimentConstructor;
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.dcoref.Document;
+import edu.stanford.nlp.dcoref.Mention;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.util.IntPair;
+
+/**
+ * blocking layer of the search, only the cluster pairs which share a block are proposed as candidates
+ * <p>
+ * Each cluster is put into the blocks of its heads, the lemmas of its mentions, its NE types and the
+ * thesaurus neighbours of its heads ({@link ExperimentConstructor#datas}). In addition, two clusters
+ * containing a pair of WordNet synonym mentions ({@link Document#mentionSynonymInWN}) are always
+ * proposed. If separateTypes is true, the blocks of event clusters and entity clusters are disjoint,
+ * so event-entity pairs are never proposed. All these pairs almost always get all-zero features.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class BlockingIndex {
+
+	/** all block types */
+	public static final String[] BLOCK_TYPES = {"head", "lemma", "ner", "synonym", "thesaurus"};
+
+	/** document which provides the WordNet synonym mention pairs */
+	private Document mdocument;
+
+	/** the block types in use */
+	private Set<String> mblockTypes;
+
+	/** whether event clusters and entity clusters are put into different blocks */
+	private boolean mseparateTypes;
+
+	/**
+	 * @param document
+	 * @param blockTypes subset of BLOCK_TYPES
+	 * @param separateTypes
+	 */
+	public BlockingIndex(Document document, Set<String> blockTypes, boolean separateTypes) {
+		for (String blockType : blockTypes) {
+			if (!Arrays.asList(BLOCK_TYPES).contains(blockType)) {
+				throw new RuntimeException("unknown block type: " + blockType);
+			}
+		}
+		mdocument = document;
+		mblockTypes = blockTypes;
+		mseparateTypes = separateTypes;
+	}
+
+	/** whether the cluster contains a verbal mention, the same definition as the event merge in Feature */
+	private boolean isEvent(CorefCluster cluster) {
+		for (Mention mention : cluster.getCorefMentions()) {
+			if (mention.isVerb) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * the blocks of the cluster
+	 *
+	 * @param cluster
+	 * @return
+	 */
+	public Set<String> getBlocks(CorefCluster cluster) {
+		Set<String> keys = new HashSet<String>();
+		if (mblockTypes.contains("head") || mblockTypes.contains("thesaurus")) {
+			for (String head : cluster.heads) {
+				String word = head.toLowerCase();
+				if (mblockTypes.contains("head")) {
+					keys.add("WORD:" + word);
+				}
+				if (mblockTypes.contains("thesaurus") && ExperimentConstructor.datas != null && ExperimentConstructor.datas.containsKey(word)) {
+					for (String neighbour : ExperimentConstructor.datas.get(word)) {
+						keys.add("WORD:" + neighbour.toLowerCase());
+					}
+				}
+			}
+		}
+
+		if (mblockTypes.contains("lemma") && cluster.predictedCentroid != null) {
+			ClassicCounter<String> lemmas = cluster.predictedCentroid.get("LEMMA");
+			if (lemmas != null) {
+				for (String lemma : lemmas.keySet()) {
+					keys.add("WORD:" + lemma.toLowerCase());
+				}
+			}
+		}
+
+		if (mblockTypes.contains("ner")) {
+			for (String ner : cluster.nerStrings) {
+				if (ner.equals("O") || ner.equals("MISC")) continue;
+				keys.add("NER:" + ner);
+			}
+		}
+
+		if (!mseparateTypes) return keys;
+
+		String prefix = isEvent(cluster) ? "V-" : "E-";
+		Set<String> typedKeys = new HashSet<String>();
+		for (String key : keys) {
+			typedKeys.add(prefix + key);
+		}
+		return typedKeys;
+	}
+
+	/**
+	 * the cluster pairs which share a block. The pairs are returned in the same order and orientation as the
+	 * exhaustive enumeration over keys: i from 0 to keys.length, j from 0 to i
+	 *
+	 * @param clusters
+	 * @param keys the cluster ids in the enumeration order
+	 * @return the pairs, each pair is encoded as i * keys.length + j
+	 */
+	public long[] getPairs(Map<Integer, CorefCluster> clusters, int[] keys) {
+		Map<String, List<Integer>> blocks = new HashMap<String, List<Integer>>();
+		boolean[] events = new boolean[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			CorefCluster cluster = clusters.get(keys[i]);
+			events[i] = isEvent(cluster);
+			for (String block : getBlocks(cluster)) {
+				List<Integer> members = blocks.get(block);
+				if (members == null) {
+					members = new ArrayList<Integer>();
+					blocks.put(block, members);
+				}
+				members.add(i);
+			}
+		}
+
+		Set<Long> pairs = new HashSet<Long>();
+		for (List<Integer> members : blocks.values()) {
+			// the members are added in increasing order
+			for (int i = 0; i < members.size(); i++) {
+				for (int j = 0; j < i; j++) {
+					pairs.add((long) members.get(i) * keys.length + members.get(j));
+				}
+			}
+		}
+
+		if (mblockTypes.contains("synonym") && mdocument.mentionSynonymInWN != null) {
+			Map<Integer, Integer> positions = new HashMap<Integer, Integer>();
+			for (int i = 0; i < keys.length; i++) {
+				for (Mention mention : clusters.get(keys[i]).getCorefMentions()) {
+					positions.put(mention.mentionID, i);
+				}
+			}
+
+			for (IntPair mentionPair : mdocument.mentionSynonymInWN) {
+				Integer first = positions.get(mentionPair.get(0));
+				Integer second = positions.get(mentionPair.get(1));
+				if (first == null || second == null || first.intValue() == second.intValue()) continue;
+				if (mseparateTypes && events[first] != events[second]) continue;
+				int i = Math.max(first, second);
+				int j = Math.min(first, second);
+				pairs.add((long) i * keys.length + j);
+			}
+		}
+
+		long[] result = new long[pairs.size()];
+		int index = 0;
+		for (Long pair : pairs) {
+			result[index++] = pair;
+		}
+		Arrays.sort(result);
+		return result;
+	}
+}
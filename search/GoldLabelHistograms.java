@@ -0,0 +1,104 @@
+package edu.oregonstate.search;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.dcoref.Document;
+import edu.stanford.nlp.dcoref.Mention;
+
+/**
+ * the histogram of the gold cluster ids of the mentions of each cluster, used by {@link IterativeResolution} to
+ * count the coreferent mention pairs of two clusters without comparing the mention pairs
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class GoldLabelHistograms {
+
+	/** gold label of the mentions which are not in the gold clusters */
+	public static final int NO_GOLD = -1;
+
+	/** cluster id -> (gold cluster id -> number of mentions) */
+	private Map<Integer, Map<Integer, Integer>> mhistograms;
+
+	/** cluster id -> number of mentions */
+	private Map<Integer, Integer> msizes;
+
+	/**
+	 * the histograms of the clusters, the gold labels come from the gold mentions of the document
+	 *
+	 * @param document
+	 * @param clusters
+	 */
+	public GoldLabelHistograms(Document document, Map<Integer, CorefCluster> clusters) {
+		mhistograms = new HashMap<Integer, Map<Integer, Integer>>();
+		msizes = new HashMap<Integer, Integer>();
+		for (Integer id : clusters.keySet()) {
+			Map<Integer, Integer> histogram = new HashMap<Integer, Integer>();
+			for (Mention mention : clusters.get(id).getCorefMentions()) {
+				Mention goldMention = document.allGoldMentions.get(mention.mentionID);
+				int gold = goldMention == null ? NO_GOLD : goldMention.goldCorefClusterID;
+				Integer count = histogram.get(gold);
+				histogram.put(gold, count == null ? 1 : count + 1);
+			}
+			mhistograms.put(id, histogram);
+			msizes.put(id, clusters.get(id).getCorefMentions().size());
+		}
+	}
+
+	/** the number of mentions in the cluster */
+	public int getClusterSize(int clusterID) {
+		Integer size = msizes.get(clusterID);
+		if (size == null) {
+			throw new RuntimeException("cluster " + clusterID + " has no gold label histogram");
+		}
+		return size;
+	}
+
+	/** the number of mention pairs between the two clusters which are coreferent in the gold clusters */
+	public int getGoldOverlap(int clusterID1, int clusterID2) {
+		Map<Integer, Integer> histogram1 = histogramOf(clusterID1);
+		Map<Integer, Integer> histogram2 = histogramOf(clusterID2);
+		if (histogram1.size() > histogram2.size()) {
+			Map<Integer, Integer> temp = histogram1;
+			histogram1 = histogram2;
+			histogram2 = temp;
+		}
+
+		int overlap = 0;
+		for (Map.Entry<Integer, Integer> entry : histogram1.entrySet()) {
+			if (entry.getKey() == NO_GOLD) continue;
+			Integer count = histogram2.get(entry.getKey());
+			if (count != null) {
+				overlap += entry.getValue() * count;
+			}
+		}
+		return overlap;
+	}
+
+	/**
+	 * merge the histogram of the cluster from into the cluster to, as CorefCluster.mergeClusters
+	 *
+	 * @param toID
+	 * @param fromID
+	 */
+	public void merge(int toID, int fromID) {
+		Map<Integer, Integer> to = histogramOf(toID);
+		Map<Integer, Integer> from = mhistograms.remove(fromID);
+		for (Map.Entry<Integer, Integer> entry : from.entrySet()) {
+			Integer count = to.get(entry.getKey());
+			to.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+		}
+		msizes.put(toID, msizes.get(toID) + msizes.remove(fromID));
+	}
+
+	/** the histogram of the cluster */
+	private Map<Integer, Integer> histogramOf(int clusterID) {
+		Map<Integer, Integer> histogram = mhistograms.get(clusterID);
+		if (histogram == null) {
+			throw new RuntimeException("cluster " + clusterID + " has no gold label histogram");
+		}
+		return histogram;
+	}
+}
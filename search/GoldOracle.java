@@ -0,0 +1,130 @@
+package edu.oregonstate.search;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.dcoref.Document;
+import edu.stanford.nlp.dcoref.Mention;
+
+/**
+ * gold oracle of the training search, which tells whether a state only contains right links
+ * <p>
+ * A right link is a pair of mentions in the same gold cluster. A cluster is pure if all of its mention
+ * pairs are right links, that is, it is a singleton or all of its mentions have the same gold label.
+ * A state is good if all of its clusters are pure. The oracle keeps the gold label of each cluster of
+ * the expanded state and the number of its impure clusters, so a successor produced by merging clusters
+ * i and j is good if and only if the expanded state is good and i and j have the same gold label, which
+ * is answered in O(1) for each candidate.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class GoldOracle {
+
+	/** label of a cluster whose mentions are not all in the same gold cluster */
+	public static final int IMPURE = Integer.MIN_VALUE;
+
+	/** mention id -> gold cluster id */
+	private Map<Integer, Integer> mgoldLabels;
+
+	/** the expanded state */
+	private State<CorefCluster> mstate;
+
+	/** the search step of the expanded state, the step of the actions of its successors */
+	private int mstep;
+
+	/** cluster id -> gold label of the clusters of the expanded state */
+	private Map<Integer, Integer> mlabels;
+
+	/** the number of impure clusters of the expanded state */
+	private int mnoOfImpure;
+
+	public GoldOracle(Document document) {
+		mgoldLabels = new HashMap<Integer, Integer>();
+		for (CorefCluster cluster : document.goldCorefClusters.values()) {
+			for (Mention mention : cluster.getCorefMentions()) {
+				mgoldLabels.put(mention.mentionID, cluster.clusterID);
+			}
+		}
+		mlabels = new HashMap<Integer, Integer>();
+	}
+
+	/** an oracle without the gold clusters, for the subclasses which know the good states from elsewhere */
+	protected GoldOracle() {
+		mgoldLabels = new HashMap<Integer, Integer>();
+		mlabels = new HashMap<Integer, Integer>();
+	}
+
+	/** the gold label of the cluster, IMPURE if its mentions are not all in the same gold cluster */
+	public int getLabel(CorefCluster cluster) {
+		int label = IMPURE;
+		boolean first = true;
+		for (Mention mention : cluster.getCorefMentions()) {
+			Integer goldLabel = mgoldLabels.get(mention.mentionID);
+			if (goldLabel == null) return IMPURE;
+			if (first) {
+				label = goldLabel;
+				first = false;
+			} else if (label != goldLabel) {
+				return IMPURE;
+			}
+		}
+		return label;
+	}
+
+	/** whether all mention pairs of the cluster are right links */
+	public boolean isPure(CorefCluster cluster) {
+		return cluster.getCorefMentions().size() <= 1 || getLabel(cluster) != IMPURE;
+	}
+
+	/**
+	 * set the state which is expanded, its successors can be checked in O(1)
+	 *
+	 * @param state
+	 * @param step the search step of the expansion
+	 */
+	public void setState(State<CorefCluster> state, int step) {
+		mstate = state;
+		mstep = step;
+		mlabels.clear();
+		mnoOfImpure = 0;
+		for (Map.Entry<Integer, CorefCluster> entry : state.getState().entrySet()) {
+			CorefCluster cluster = entry.getValue();
+			mlabels.put(entry.getKey(), getLabel(cluster));
+			if (!isPure(cluster)) {
+				mnoOfImpure++;
+			}
+		}
+	}
+
+	/** whether merging the two clusters of the expanded state only introduces right links */
+	public boolean isGoodMerge(int iID, int jID) {
+		Integer iLabel = mlabels.get(iID);
+		Integer jLabel = mlabels.get(jID);
+		if (iLabel == null || jLabel == null) {
+			throw new RuntimeException("clusters " + iID + " and " + jID + " are not in the expanded state");
+		}
+		return iLabel != IMPURE && iLabel.intValue() == jLabel.intValue();
+	}
+
+	/**
+	 * whether all links of the state are right links. A successor of the expanded state is checked in O(1),
+	 * any other state by its clusters
+	 *
+	 * @param state
+	 * @return
+	 */
+	public boolean isGood(State<CorefCluster> state) {
+		long action = state.getID();
+		if (mstate != null && action != MergeAction.NONE && MergeAction.getStep(action) == mstep
+				&& mlabels.containsKey(MergeAction.getI(action)) && mlabels.containsKey(MergeAction.getJ(action))) {
+			return mnoOfImpure == 0 && isGoodMerge(MergeAction.getI(action), MergeAction.getJ(action));
+		}
+
+		for (CorefCluster cluster : state.getState().values()) {
+			if (!isPure(cluster)) return false;
+		}
+		return true;
+	}
+}
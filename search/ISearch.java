@@ -20,13 +20,13 @@ public interface ISearch {
 	/** weight */
 	public double[] getWeight();
 	
-	/** set weight */
+	/** set weight, the training search updates it in place, so pass a copy to keep it */
 	public void setWeight(double[] weight);
 	
 	/** average total weight */
 	public double[] getTotalWeight();
 	
-	/** set average total weight */
+	/** set average total weight, the training search updates it in place */
 	public void setTotalWeight(double[] totalWeight);
 	
 	/** learn weight */
@@ -1,9 +1,7 @@
 package edu.oregonstate.search;
 
-import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
@@ -16,7 +14,9 @@ import edu.stanford.nlp.dcoref.Mention;
 import edu.stanford.nlp.stats.Counter;
 import edu.stanford.nlp.dcoref.Dictionaries;
 import edu.oregonstate.experiment.ExperimentConstructor;
+import edu.oregonstate.features.ClusterPairFeatureCache;
 import edu.oregonstate.features.Feature;
+import edu.oregonstate.features.FeatureStore;
 import edu.oregonstate.io.ResultOutput;
 import edu.oregonstate.training.Train;
 
@@ -30,7 +30,9 @@ import edu.oregonstate.training.Train;
  * than half of the mention pairs introduced by this merge are correct. 
  * <b>NOTE</b>
  * In each iteration, we perform the merge operation that has the highest score. Once two clusters
- * are merged, we regenerate all the mention features to reflect the current clusters.
+ * are merged, we regenerate all the mention features to reflect the current clusters. The scores
+ * are kept in a {@link MergeQueue}, so only the pairs involving the new cluster, and the clusters whose SRL 
+ * features changed because the clusters of their arguments were merged, are scored again.
  * We stop when no merging operation with an overall benefit is found.
  * 
  * @author Jun Xie (xie@eecs.oregonstate.edu)
@@ -43,6 +45,24 @@ public class IterativeResolution {
 	protected Dictionaries mDictionary;
 	protected Matrix mModel;
 	
+	/** scores of the candidate pairs */
+	protected MergeQueue mqueue;
+	
+	/** features of the candidate pairs, encoded by {@link MergeAction}, null if the features are not kept */
+	protected Map<Long, Counter<String>> mpairFeatures;
+	
+	/** cluster id -> the pairs of the cluster in mpairFeatures */
+	protected Map<Integer, Set<Long>> mclusterPairs;
+	
+	/** cluster id -> the SRL context of the cluster when its pairs were scored, see {@link ClusterPairFeatureCache#srlContext} */
+	protected Map<Integer, String> msrlContexts;
+	
+	/** the gold label histogram of each current cluster */
+	protected GoldLabelHistograms mgoldHistograms;
+	
+	/** cluster pair features of the topic shared by all iterations, null if the store is disabled */
+	protected FeatureStore mfeatureStore;
+	
 	public IterativeResolution(Document document, Matrix model) {
 		mdocument = document;
 		mDictionary = ExperimentConstructor.mdictionary;
@@ -51,31 +71,23 @@ public class IterativeResolution {
 		initialize();
 	}
 	
+	public void setFeatureStore(FeatureStore featureStore) {
+		mfeatureStore = featureStore;
+	}
+	
 	/** initialize the clusters */
 	protected void initialize() {
 		for (Integer key : mdocument.corefClusters.keySet()) {
 			CorefCluster cluster = mdocument.corefClusters.get(key);
 			clusters.add(cluster);
 		}
+		mgoldHistograms = new GoldLabelHistograms(mdocument, mdocument.corefClusters);
 	}
 	
-	/*Compare HashMap to get the index with the maximum value*/
-	protected String compare_hashMap(Map<String, Double> scores) {
-		Collection<Double> c = scores.values();
-		Double maxvalue = Collections.max(c);
-		String maxIndex = "";
-		
-		Set<String> scores_set = scores.keySet();
-		Iterator<String> scores_it = scores_set.iterator();
-		while(scores_it.hasNext()) {
-			String id = scores_it.next();
-			Double value = scores.get(id);
-			if (value == maxvalue) {
-				maxIndex = id;
-				break;
-			}
-		}
-		return maxIndex;
+	/** merge c1 into c2, and keep the gold label histograms in sync */
+	protected void mergeClusters(CorefCluster c2, CorefCluster c1) {
+		mgoldHistograms.merge(c2.getClusterID(), c1.getClusterID());
+		CorefCluster.mergeClusters(mdocument, c2, c1, mDictionary);
 	}
 	
 	// according to the how many features not how many value is larger than 0
@@ -91,95 +103,155 @@ public class IterativeResolution {
 		return sum;
 	}
 
-	private void fillScore(Map<String, Double> scoreMap) {
-		// compute the pair of the entities
-		for (int i = 0; i < (clusters.size() - 1); i++) {
+	/** score all pairs of the current clusters */
+	protected void fillScore() {
+		mqueue = new MergeQueue();
+		if (mpairFeatures != null) {
+			mpairFeatures = new HashMap<Long, Counter<String>>();
+			mclusterPairs = new HashMap<Integer, Set<Long>>();
+		}
+		msrlContexts = new HashMap<Integer, String>();
+		for (CorefCluster cluster : clusters) {
+			msrlContexts.put(cluster.getClusterID(), ClusterPairFeatureCache.srlContext(cluster));
+		}
+		
+		for (int i = 0; i < clusters.size(); i++) {
 			for (int j = 0; j < i; j++) {
-				CorefCluster c1 = clusters.get(i);
-				CorefCluster c2 = clusters.get(j);
-				Mention formerRep = c1.getRepresentativeMention();
-				Mention latterRep = c2.getRepresentativeMention();
-				if (formerRep.isPronominal() == true || latterRep.isPronominal() == true) continue;
-				Counter<String> features = Feature.getFeatures(mdocument, c1, c2, false, mDictionary); // get the feature size
-				double value = calculateScore(features);
-				scoreMap.put(Integer.toString(i) + "-" + Integer.toString(j), value);
+				scorePair(clusters.get(i), clusters.get(j));
 			}
 		}
 	}
 	
-	/** return max value of the score map */
-	protected double maximumValue(Map<String, Double> scores) {
-		Collection<Double> c = scores.values();
-		Double maxvalue = Collections.max(c);
-		return maxvalue;
+	/**
+	 * score the pair and push it into the queue, c1 will be merged into c2
+	 * 
+	 * @param c1
+	 * @param c2
+	 */
+	protected void scorePair(CorefCluster c1, CorefCluster c2) {
+		Mention formerRep = c1.getRepresentativeMention();
+		Mention latterRep = c2.getRepresentativeMention();
+		if (formerRep.isPronominal() == true || latterRep.isPronominal() == true) return;
+		Counter<String> features = mfeatureStore == null ? Feature.getFeatures(mdocument, c1, c2, false, mDictionary) : mfeatureStore.getFeatures(mdocument, c1, c2, false, mDictionary);
+		double value = calculateScore(features);
+		mqueue.add(c1.getClusterID(), c2.getClusterID(), value);
+		if (mpairFeatures != null) {
+			long pair = MergeAction.encode(c1.getClusterID(), c2.getClusterID(), 0);
+			mpairFeatures.put(pair, features);
+			indexPair(c1.getClusterID(), pair);
+			indexPair(c2.getClusterID(), pair);
+		}
+	}
+	
+	/** add the pair to the pairs of the cluster */
+	private void indexPair(int clusterID, long pair) {
+		Set<Long> pairs = mclusterPairs.get(clusterID);
+		if (pairs == null) {
+			pairs = new HashSet<Long>();
+			mclusterPairs.put(clusterID, pairs);
+		}
+		pairs.add(pair);
+	}
+	
+	/** remove the features of the pairs of the cluster */
+	private void removePairs(int clusterID) {
+		if (mpairFeatures == null) return;
+		
+		Set<Long> pairs = mclusterPairs.remove(clusterID);
+		if (pairs == null) return;
+		for (Long pair : pairs) {
+			mpairFeatures.remove(pair);
+			int otherID = MergeAction.getI(pair) == clusterID ? MergeAction.getJ(pair) : MergeAction.getI(pair);
+			Set<Long> otherPairs = mclusterPairs.get(otherID);
+			if (otherPairs != null) {
+				otherPairs.remove(pair);
+			}
+		}
+	}
+	
+	/** write the training examples of all candidate pairs */
+	private void generateTrainingExamples() {
+		for (Long pair : mpairFeatures.keySet()) {
+			CorefCluster ci = mdocument.corefClusters.get(MergeAction.getI(pair));
+			CorefCluster cj = mdocument.corefClusters.get(MergeAction.getJ(pair));
+			Counter<String> features = mpairFeatures.get(pair);
+			double correct = mgoldHistograms.getGoldOverlap(ci.getClusterID(), cj.getClusterID());
+			double total = mgoldHistograms.getClusterSize(ci.getClusterID()) * mgoldHistograms.getClusterSize(cj.getClusterID());
+			
+			double quality = correct/total;
+			String record = ResultOutput.buildString(features, quality);
+			ResultOutput.writeTextFilewithoutNewline(Train.currentOutputFileName, record);
+		}
+	}
+	
+	/** perform the merge with the highest score, and score the pairs of the new cluster and of the clusters whose SRL context changed */
+	protected void mergeBest() {
+		long pair = mqueue.poll();
+		CorefCluster c1 = mdocument.corefClusters.get(MergeAction.getI(pair));
+		CorefCluster c2 = mdocument.corefClusters.get(MergeAction.getJ(pair));
+		ResultOutput.writeTextFile(ExperimentConstructor.logFile, "another merge----" + c1.getClusterID() + "---->" + c2.getClusterID());
+		int removeID = c1.getClusterID();
+		mergeClusters(c2, c1);
+		mdocument.corefClusters.remove(removeID);
+		for (Integer id : mdocument.corefClusters.keySet()) {
+        	CorefCluster cluster = mdocument.corefClusters.get(id);
+        	cluster.regenerateFeature();
+        }
+		clusters = new ArrayList<CorefCluster>();
+		for (Integer key : mdocument.corefClusters.keySet()) {
+			CorefCluster cluster = mdocument.corefClusters.get(key);
+			clusters.add(cluster);
+		}
+		
+		// the pairs of the two merged clusters are stale, and the pairs of the clusters whose SRL context
+		// changed, because their SRL features depend on the clusters of their arguments and predicates
+		Set<Integer> staleIDs = new HashSet<Integer>();
+		msrlContexts.remove(removeID);
+		for (CorefCluster cluster : clusters) {
+			String context = ClusterPairFeatureCache.srlContext(cluster);
+			String previous = msrlContexts.put(cluster.getClusterID(), context);
+			if (cluster == c2 || !context.equals(previous)) {
+				staleIDs.add(cluster.getClusterID());
+			}
+		}
+		mqueue.invalidate(removeID);
+		removePairs(removeID);
+		for (Integer staleID : staleIDs) {
+			mqueue.invalidate(staleID);
+			removePairs(staleID);
+		}
+		
+		// keep the same orientation as fillScore, the latter cluster in the list is merged into the former one,
+		// and a pair of two stale clusters is scored once
+		for (int position = 0; position < clusters.size(); position++) {
+			CorefCluster cluster = clusters.get(position);
+			if (!staleIDs.contains(cluster.getClusterID())) continue;
+			
+			for (int i = 0; i < clusters.size(); i++) {
+				if (i > position) {
+					scorePair(clusters.get(i), cluster);
+				} else if (i < position && !staleIDs.contains(clusters.get(i).getClusterID())) {
+					scorePair(cluster, clusters.get(i));
+				}
+			}
+		}
 	}
-
 	
 	/**
 	 * iterative entity/event resolution
 	 */
 	public void merge() {
-		Map<String, Double> scoreMap = new HashMap<String, Double>();
-		fillScore(scoreMap);
-		boolean remainLoop = true;
-		while(remainLoop && scoreMap.size() > 0) {
+		mpairFeatures = new HashMap<Long, Counter<String>>();
+		fillScore();
+		while(!mqueue.isEmpty()) {
 			// generate the training examples
-			double maximumValue = maximumValue(scoreMap);
+			double maximumValue = mqueue.peekScore();
 			if (maximumValue <= 0.5) {
 				break;
 			}
 			
-			List<String> keys = new ArrayList<String>();
-			for (String key : scoreMap.keySet()) {
-				keys.add(key);
-			}
-			for (int i = 0; i < keys.size(); i++) {
-				String[] key = keys.get(i).split("-");
-				CorefCluster ci = clusters.get(Integer.parseInt(key[0]));
-				CorefCluster cj = clusters.get(Integer.parseInt(key[1]));
-				Mention formerRep = ci.getRepresentativeMention();
-				Mention latterRep = cj.getRepresentativeMention();
-				if (formerRep.isPronominal() == true || latterRep.isPronominal() == true) continue;
-				Counter<String> features = Feature.getFeatures(mdocument, ci, cj, false, mDictionary); // get the feature
-				Set<Mention> toMentions = ci.getCorefMentions();
-				Set<Mention> fromMentions = cj.getCorefMentions();
-				double correct = 0.0;
-				double total = toMentions.size() * fromMentions.size();
-				Map<Integer, Mention> goldCorefClusters = mdocument.allGoldMentions;
-				for (Mention toMention : toMentions) {
-					for (Mention fromMention : fromMentions) {
-						if (goldCorefClusters.containsKey(toMention.mentionID) && goldCorefClusters.containsKey(fromMention.mentionID)) {
-							if (goldCorefClusters.get(toMention.mentionID).goldCorefClusterID == goldCorefClusters.get(fromMention.mentionID).goldCorefClusterID) {
-				    			correct += 1.0;
-				    		}
-						}
-					}
-				}
-				
-				double quality = correct/total;
-				String record = ResultOutput.buildString(features, quality);
-				ResultOutput.writeTextFilewithoutNewline(Train.currentOutputFileName, record);
-			}
-			
-			String index = compare_hashMap(scoreMap);
-			String[] indexs = index.split("-");
-			CorefCluster c1 = clusters.get(Integer.parseInt(indexs[0]));
-			CorefCluster c2 = clusters.get(Integer.parseInt(indexs[1]));
-			ResultOutput.writeTextFile(ExperimentConstructor.logFile, "another merge----" + c1.getClusterID() + "---->" + c2.getClusterID());
-			int removeID = c1.getClusterID();
-			CorefCluster.mergeClusters(mdocument, c2, c1, mDictionary);
-			mdocument.corefClusters.remove(removeID);
-			for (Integer id : mdocument.corefClusters.keySet()) {
-            	CorefCluster cluster = mdocument.corefClusters.get(id);
-            	cluster.regenerateFeature();
-            }
-			clusters = new ArrayList<CorefCluster>();
-			for (Integer key : mdocument.corefClusters.keySet()) {
-				CorefCluster cluster = mdocument.corefClusters.get(key);
-				clusters.add(cluster);
-			}
-			scoreMap = new HashMap<String, Double>();
-			fillScore(scoreMap);
+			generateTrainingExamples();
+			mergeBest();
 		}
 	}
 	
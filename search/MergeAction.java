@@ -0,0 +1,70 @@
+package edu.oregonstate.search;
+
+/**
+ * encode a merge action as a primitive long instead of the "i-j-offset" string
+ * <p>
+ * The layout of the long is: search step (20 bits), i cluster id (22 bits), j cluster id (22 bits).
+ * The search step makes the action id unique in the whole search, because the same cluster pair
+ * can be merged in different search steps.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class MergeAction {
+
+	/** the id of a state which is not produced by a merge action, for example, the initial state */
+	public static final long NONE = -1L;
+
+	/** bits for the cluster id */
+	private static final int CLUSTER_BITS = 22;
+
+	/** bits for the search step */
+	private static final int STEP_BITS = 20;
+
+	private static final long CLUSTER_MASK = (1L << CLUSTER_BITS) - 1;
+
+	private static final long STEP_MASK = (1L << STEP_BITS) - 1;
+
+	private MergeAction() {
+	}
+
+	/**
+	 * encode the merge action
+	 *
+	 * @param iID the cluster which survives the merge
+	 * @param jID the cluster which is merged into iID
+	 * @param step the search step
+	 * @return
+	 */
+	public static long encode(int iID, int jID, int step) {
+		if (iID < 0 || iID > CLUSTER_MASK || jID < 0 || jID > CLUSTER_MASK) {
+			throw new RuntimeException("cluster id out of range: " + iID + " " + jID);
+		}
+		if (step < 0 || step > STEP_MASK) {
+			throw new RuntimeException("search step out of range: " + step);
+		}
+
+		return ((long) step << (2 * CLUSTER_BITS)) | ((long) iID << CLUSTER_BITS) | jID;
+	}
+
+	/** the cluster which survives the merge */
+	public static int getI(long action) {
+		return (int) ((action >>> CLUSTER_BITS) & CLUSTER_MASK);
+	}
+
+	/** the cluster which is merged into i */
+	public static int getJ(long action) {
+		return (int) (action & CLUSTER_MASK);
+	}
+
+	/** the search step in which the action is generated */
+	public static int getStep(long action) {
+		return (int) ((action >>> (2 * CLUSTER_BITS)) & STEP_MASK);
+	}
+
+	/** print the action in the old "i-j-step" format, used for the log and feature files */
+	public static String toString(long action) {
+		if (action == NONE) return "";
+		return getI(action) + "-" + getJ(action) + "-" + getStep(action);
+	}
+}
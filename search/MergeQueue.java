@@ -0,0 +1,109 @@
+package edu.oregonstate.search;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * max-heap of the scores of the cluster pairs, used by the greedy resolvers
+ * <p>
+ * The pairs are encoded by {@link MergeAction}, i is the cluster merged away and j is the cluster
+ * which survives. Each cluster has a version, and each entry remembers the versions of its two
+ * clusters when it is pushed. Once a cluster is merged, its version is increased, so all of its
+ * entries become stale and are discarded lazily when they reach the top of the heap. Only the pairs
+ * involving the new cluster need to be scored and pushed again.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class MergeQueue {
+
+	/** an entry of the heap */
+	private static class Entry {
+		private final long pair;
+		private final double score;
+		private final int iVersion;
+		private final int jVersion;
+
+		private Entry(long pair, double score, int iVersion, int jVersion) {
+			this.pair = pair;
+			this.score = score;
+			this.iVersion = iVersion;
+			this.jVersion = jVersion;
+		}
+	}
+
+	/** heap, the highest score first */
+	private PriorityQueue<Entry> mheap;
+
+	/** cluster id -> version */
+	private Map<Integer, Integer> mversions;
+
+	public MergeQueue() {
+		mheap = new PriorityQueue<Entry>(11, new Comparator<Entry>() {
+			public int compare(Entry e1, Entry e2) {
+				return Double.compare(e2.score, e1.score);
+			}
+		});
+		mversions = new HashMap<Integer, Integer>();
+	}
+
+	/** the current version of the cluster */
+	private int version(int clusterID) {
+		Integer version = mversions.get(clusterID);
+		return version == null ? 0 : version;
+	}
+
+	/**
+	 * push the score of the pair
+	 *
+	 * @param iID the cluster which is merged away
+	 * @param jID the cluster which survives
+	 * @param score
+	 */
+	public void add(int iID, int jID, double score) {
+		mheap.add(new Entry(MergeAction.encode(iID, jID, 0), score, version(iID), version(jID)));
+	}
+
+	/** all entries of the cluster become stale */
+	public void invalidate(int clusterID) {
+		mversions.put(clusterID, version(clusterID) + 1);
+	}
+
+	/** whether the entry is still valid */
+	private boolean isValid(Entry entry) {
+		return entry.iVersion == version(MergeAction.getI(entry.pair)) && entry.jVersion == version(MergeAction.getJ(entry.pair));
+	}
+
+	/** discard the stale entries on the top of the heap */
+	private void discardStale() {
+		while (!mheap.isEmpty() && !isValid(mheap.peek())) {
+			mheap.poll();
+		}
+	}
+
+	/** whether there is no valid pair */
+	public boolean isEmpty() {
+		discardStale();
+		return mheap.isEmpty();
+	}
+
+	/** the highest score */
+	public double peekScore() {
+		discardStale();
+		if (mheap.isEmpty()) {
+			throw new RuntimeException("the merge queue is empty");
+		}
+		return mheap.peek().score;
+	}
+
+	/** remove the pair with the highest score, decode it by {@link MergeAction#getI(long)} and {@link MergeAction#getJ(long)} */
+	public long poll() {
+		discardStale();
+		if (mheap.isEmpty()) {
+			throw new RuntimeException("the merge queue is empty");
+		}
+		return mheap.poll().pair;
+	}
+}
@@ -0,0 +1,83 @@
+package edu.oregonstate.search;
+
+import java.util.Map;
+
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.dcoref.Mention;
+
+/**
+ * canonical fingerprint of a partition, which does not depend on the cluster ids
+ * <p>
+ * Zobrist-style hashing: each mention id has a random 64 bit key, a cluster is hashed by the XOR of the
+ * keys of its mentions, and a partition by the XOR of the mixed hashes of its clusters. The cluster
+ * hashes are mixed so that different groupings of the same mentions get different fingerprints. 
+ * Merging two clusters updates the fingerprint in O(1) given the two cluster hashes, which are kept
+ * by the states ({@link State#getClusterHash}), so the mentions of a cluster are only hashed once.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class PartitionHash {
+
+	private PartitionHash() {
+	}
+
+	/** SplitMix64 finalizer, a bijective mix of the 64 bits */
+	private static long mix(long value) {
+		long z = value + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/** random key of the mention id */
+	public static long mentionKey(int mentionID) {
+		return mix(mentionID);
+	}
+
+	/** the hash of the cluster, XOR of the keys of its mentions */
+	public static long clusterHash(CorefCluster cluster) {
+		long hash = 0L;
+		for (Mention mention : cluster.getCorefMentions()) {
+			hash ^= mentionKey(mention.mentionID);
+		}
+		return hash;
+	}
+
+	/** the contribution of a cluster to the fingerprint of the partition */
+	private static long clusterTerm(long clusterHash) {
+		return mix(clusterHash ^ 0x5DEECE66DL);
+	}
+
+	/** the fingerprint of the partition */
+	public static long fingerprint(Map<Integer, CorefCluster> clusters) {
+		long fingerprint = 0L;
+		for (CorefCluster cluster : clusters.values()) {
+			fingerprint ^= clusterTerm(clusterHash(cluster));
+		}
+		return fingerprint;
+	}
+
+	/** set the hashes of the clusters and the fingerprint of the materialized state */
+	public static void hash(State<CorefCluster> state) {
+		long fingerprint = 0L;
+		for (Map.Entry<Integer, CorefCluster> entry : state.getState().entrySet()) {
+			long hash = clusterHash(entry.getValue());
+			state.setClusterHash(entry.getKey(), hash);
+			fingerprint ^= clusterTerm(hash);
+		}
+		state.setFingerprint(fingerprint);
+	}
+
+	/**
+	 * the fingerprint of the partition after merging two of its clusters
+	 *
+	 * @param fingerprint the fingerprint before the merge
+	 * @param iHash the hash of one merged cluster
+	 * @param jHash the hash of the other merged cluster
+	 * @return
+	 */
+	public static long merge(long fingerprint, long iHash, long jHash) {
+		return fingerprint ^ clusterTerm(iHash) ^ clusterTerm(jHash) ^ clusterTerm(iHash ^ jHash);
+	}
+}
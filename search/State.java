@@ -12,6 +12,11 @@ import edu.stanford.nlp.stats.Counter;
 
 /**
  * represent the state  
+ * <p>
+ * A successor generated by a merge action starts as a compact descriptor: the parent state,
+ * the merge action and the merged cluster, together with its features, cost and loss. The full 
+ * partition is only materialized when it is asked for, for example, when the state is scored by 
+ * the loss function or expanded by the search, and can be released again by {@link #compact()}.
  * 
  * @author Jun Xie (xie@eecs.oregonstate.edu)
  *
@@ -21,11 +26,17 @@ public class State<T> implements Serializable {
 	private static final long serialVersionUID = 8666265337578515592L;
 	// every state consists of a set of CorefClusters, in order to make it generic
 	
-	/** state */
+	/** state, null if the successor has not been materialized */
 	private Map<Integer, T> state;
 	
-	/** id */
-	private String id;
+	/** the state which the successor is generated from */
+	private State<T> mparent;
+	
+	/** the cluster produced by the merge action */
+	private T mmerged;
+	
+	/** id, the merge action which produces the state, see {@link MergeAction} */
+	private long id;
 	
 	/** features */
 	private Counter<String> mfeatures;
@@ -40,16 +51,73 @@ public class State<T> implements Serializable {
 	private String scoreDetailInformation;
 	
 	private String featureString;
+	
+	/** fingerprint of the partition, see {@link PartitionHash} */
+	private long mfingerprint;
+	
+	/** cluster id -> hash of the cluster, only the merged cluster for a successor which has not been detached */
+	private Map<Integer, Long> mclusterHashes;
 
 	public State() {
 		state = new HashMap<Integer, T>();
-		id = "";
+		mparent = null;
+		mmerged = null;
+		id = MergeAction.NONE;
 		mfeatures = new ClassicCounter<String>();
 		mMetricScore = new double[3];
 		mCostScore = 0.0;
 		scoreDetailInformation = "";
 	}
 	
+	/**
+	 * create the successor of the parent by the merge action, the partition is not materialized
+	 * 
+	 * @param parent
+	 * @param action
+	 * @param merged the cluster produced by merging the j cluster into the i cluster of the action
+	 * @return
+	 */
+	public static <T> State<T> successor(State<T> parent, long action, T merged) {
+		State<T> successor = new State<T>();
+		successor.state = null;
+		successor.mparent = parent;
+		successor.mmerged = merged;
+		successor.id = action;
+		return successor;
+	}
+	
+	/** build the partition from the parent state and the merge action */
+	private void materialize() {
+		if (state != null) return;
+		
+		state = new HashMap<Integer, T>(mparent.getState());
+		state.remove(MergeAction.getJ(id));
+		state.put(MergeAction.getI(id), mmerged);
+	}
+	
+	/** release the partition of a successor, it can be materialized again from the parent */
+	public void compact() {
+		if (mparent != null) {
+			state = null;
+		}
+	}
+	
+	/** materialize the partition and release the parent, the state can not be compacted any more */
+	public void detach() {
+		materialize();
+		mclusterHashes = clusterHashes();
+		mparent = null;
+		mmerged = null;
+	}
+	
+	/** the number of clusters in the state */
+	public int size() {
+		if (state == null) {
+			return mparent.size() - 1;
+		}
+		return state.size();
+	}
+	
 	public void setScoreDetailInformation(String scoreInformation) {
 		scoreDetailInformation = scoreInformation;
 	}
@@ -88,26 +156,34 @@ public class State<T> implements Serializable {
 	}
 	
 	public void add(Integer i, T element) {
+		materialize();
 		state.put(i, element);
 	}
 
 	public T get(int i) {
+		if (state == null) {
+			if (i == MergeAction.getI(id)) return mmerged;
+			if (i == MergeAction.getJ(id)) return null;
+			return mparent.get(i);
+		}
 		return state.get(i);
 	}
 
 	public void remove(int i) {
+		materialize();
 		state.remove(i);
 	} 
 
 	public Map<Integer, T> getState() {
+		materialize();
 		return state;
 	}
 	
-	public void setID(String val) {
+	public void setID(long val) {
 		this.id = val;
 	}
 	
-	public String getID() {
+	public long getID() {
 		return this.id;
 	}
 	
@@ -119,6 +195,48 @@ public class State<T> implements Serializable {
 		return mMetricScore;
 	}
 	
+	public void setFingerprint(long fingerprint) {
+		mfingerprint = fingerprint;
+	}
+	
+	public long getFingerprint() {
+		return mfingerprint;
+	}
+	
+	/** set the hash of the cluster i, see {@link PartitionHash#clusterHash} */
+	public void setClusterHash(int i, long hash) {
+		if (mclusterHashes == null) {
+			mclusterHashes = new HashMap<Integer, Long>();
+		}
+		mclusterHashes.put(i, hash);
+	}
+	
+	/** the hash of the cluster i, a successor looks up the clusters which it does not change in its parent */
+	public long getClusterHash(int i) {
+		if (mclusterHashes != null) {
+			Long hash = mclusterHashes.get(i);
+			if (hash != null) return hash;
+		}
+		if (mparent == null) {
+			throw new RuntimeException("the hash of the cluster " + i + " has not been set");
+		}
+		return mparent.getClusterHash(i);
+	}
+	
+	/** the hashes of all clusters of the partition, null if they have not been set */
+	private Map<Integer, Long> clusterHashes() {
+		if (mparent == null) return mclusterHashes;
+		
+		Map<Integer, Long> parentHashes = mparent.clusterHashes();
+		if (parentHashes == null) return null;
+		Map<Integer, Long> hashes = new HashMap<Integer, Long>(parentHashes);
+		hashes.remove(MergeAction.getJ(id));
+		if (mclusterHashes != null) {
+			hashes.putAll(mclusterHashes);
+		}
+		return hashes;
+	}
+	
 	public void setCostScore(double score) {
 		mCostScore = score;
 	}
@@ -133,10 +251,9 @@ public class State<T> implements Serializable {
 		if (obj instanceof State) {
 			@SuppressWarnings("unchecked")
 			State<T> s = (State<T>) obj;
-			Map<Integer, T> sList = s.state;
-			if (sList.size() == state.size()) {
+			if (s.size() == size()) {
 				Set<T> objValues = new HashSet<T>(s.getState().values());
-				Set<T> stateValues = new HashSet<T>(state.values());
+				Set<T> stateValues = new HashSet<T>(getState().values());
 				boolean equal = objValues.equals(stateValues);
 				return equal;
 			} else {
@@ -151,8 +268,9 @@ public class State<T> implements Serializable {
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("state: \n");
-		for (Integer key : state.keySet()) {
-			sb.append(state.get(key).toString() + " \n");
+		Map<Integer, T> partition = getState();
+		for (Integer key : partition.keySet()) {
+			sb.append(partition.get(key).toString() + " \n");
 		}
 		
 		return sb.toString().trim();
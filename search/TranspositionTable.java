@@ -0,0 +1,74 @@
+package edu.oregonstate.search;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * transposition table of a search, keyed by the partition fingerprint of {@link PartitionHash}
+ * <p>
+ * The closed set contains the states which have been expanded in the search. The open set contains the
+ * states which are in the beam now: a state is opened when it is put into the beam, and released when it
+ * is taken out of the beam or pushed out by a better state, so a partition reached by different merge
+ * orders is only in the beam once, and can come back after it has left the beam.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class TranspositionTable {
+
+	/** fingerprints of the expanded states */
+	private Set<Long> mclosed;
+
+	/** fingerprints of the states in the beam */
+	private Set<Long> mopen;
+
+	/** number of duplicate states detected */
+	private int mduplicates;
+
+	public TranspositionTable() {
+		mclosed = new HashSet<Long>();
+		mopen = new HashSet<Long>();
+		mduplicates = 0;
+	}
+
+	/** clear the table at the beginning of a search */
+	public void clear() {
+		mclosed.clear();
+		mopen.clear();
+		mduplicates = 0;
+	}
+
+	/** the state has been taken out of the beam and expanded */
+	public void close(long fingerprint) {
+		mclosed.add(fingerprint);
+		mopen.remove(fingerprint);
+	}
+
+	/** whether the state has been expanded */
+	public boolean isClosed(long fingerprint) {
+		boolean closed = mclosed.contains(fingerprint);
+		if (closed) mduplicates++;
+		return closed;
+	}
+
+	/** whether the same partition is in the beam */
+	public boolean isOpen(long fingerprint) {
+		boolean open = mopen.contains(fingerprint);
+		if (open) mduplicates++;
+		return open;
+	}
+
+	/** the state has been put into the beam */
+	public void open(long fingerprint) {
+		mopen.add(fingerprint);
+	}
+
+	/** the state has left the beam without being expanded */
+	public void release(long fingerprint) {
+		mopen.remove(fingerprint);
+	}
+
+	public int getDuplicates() {
+		return mduplicates;
+	}
+}
@@ -0,0 +1,267 @@
+package edu.oregonstate.training;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.oregonstate.classifier.IClassifier;
+import edu.oregonstate.costfunction.ICostFunction;
+import edu.oregonstate.experiment.ExperimentConstructor;
+import edu.oregonstate.features.Feature;
+import edu.oregonstate.general.DoubleOperation;
+import edu.oregonstate.general.FixedSizePriorityQueue;
+import edu.oregonstate.general.PriorityQueue;
+import edu.oregonstate.io.TrajectoryReader;
+import edu.oregonstate.io.TrajectoryWriter;
+import edu.oregonstate.search.GoldOracle;
+import edu.oregonstate.search.State;
+import edu.oregonstate.util.EecbConstants;
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * train a classifier offline from the trajectories recorded by the beam search (searchmethod parameter trajectoryPath)
+ * <p>
+ * Each recorded step is given to the classifier in the same way as {@link edu.oregonstate.search.BeamSearch} does
+ * during the training search: the candidates with their features and losses, the loss queue, the beam, the best
+ * and the previous best state, and the gold oracle. Only the cost scores are computed again, with the weight of the
+ * replay when the candidates are created, so a state which stays in the beam keeps the cost of its step. The
+ * recorded beam is replayed as it is, without the documents, feature extraction and loss evaluation. The updates
+ * are not the same as the ones of the search with the replay weight: the training search orders the beam by the
+ * loss, but breaks the ties of the loss by the cost when a state is put into the beam, so which states are in the
+ * recorded beam depends on the weight of the recording.
+ * <p>
+ * For DAgger, the testing searches of the training topics can be recorded as well (trajectoryDAgger), which
+ * expand the states chosen by the current weight (COST_POLICY), so their beams are ordered by the cost. The
+ * classifiers expect a beam ordered by the loss, so the states of such a beam are put into the replayed beam with
+ * their loss score as the priority. trajectoryAggregate appends the new episodes to the file,
+ * so the data set grows with each round. {@link #addTrajectories(String)} adds the episodes of another file.
+ *
+ * @author Jun Xie (xie@eecs.oregonstate.edu)
+ *
+ */
+public class ReplayTrainer {
+
+	/** the gold oracle of the replay, the good candidates of the current step are recorded */
+	private static class ReplayOracle extends GoldOracle {
+		private Set<Long> mgood = new HashSet<Long>();
+
+		private void setGood(List<State<CorefCluster>> candidates, boolean[] good) {
+			mgood.clear();
+			for (int i = 0; i < candidates.size(); i++) {
+				if (good[i]) {
+					mgood.add(candidates.get(i).getID());
+				}
+			}
+		}
+
+		@Override
+		public boolean isGood(State<CorefCluster> state) {
+			return mgood.contains(state.getID());
+		}
+	}
+
+	/** the data set */
+	private List<TrajectoryReader.Episode> mepisodes;
+
+	private ICostFunction mcostFunction;
+
+	private ReplayOracle moracle;
+
+	private double[] mweight;
+
+	private double[] mtotalWeight;
+
+	private int mviolations;
+
+	/**
+	 * load the episodes of the trajectory files
+	 *
+	 * @param paths
+	 */
+	public ReplayTrainer(String... paths) {
+		mepisodes = new ArrayList<TrajectoryReader.Episode>();
+		mcostFunction = ExperimentConstructor.createCostFunction((String) ExperimentConstructor.getParameter(EecbConstants.COSTFUNCTION, "model", "LinearCostFunction"));
+		moracle = new ReplayOracle();
+		mweight = new double[Feature.featuresName.length];
+		mtotalWeight = new double[Feature.featuresName.length];
+		for (String path : paths) {
+			addTrajectories(path);
+		}
+	}
+
+	/** add the episodes of the trajectory file to the data set */
+	public void addTrajectories(String path) {
+		TrajectoryReader reader = new TrajectoryReader(path);
+		try {
+			if (reader.getNoOfFeatures() != Feature.featuresName.length) {
+				throw new RuntimeException(path + " has " + reader.getNoOfFeatures() + " features, expected " + Feature.featuresName.length);
+			}
+			mepisodes.addAll(reader.readAll());
+		} finally {
+			reader.close();
+		}
+	}
+
+	public int getNoOfEpisodes() {
+		return mepisodes.size();
+	}
+
+	/** the classifiers update the weight in place, so pass a copy to keep it */
+	public void setWeight(double[] weight) {
+		mweight = weight;
+	}
+
+	public double[] getWeight() {
+		return mweight;
+	}
+
+	public void setTotalWeight(double[] totalWeight) {
+		mtotalWeight = totalWeight;
+	}
+
+	public double[] getTotalWeight() {
+		return mtotalWeight;
+	}
+
+	/**
+	 * one pass over all episodes of the data set
+	 *
+	 * @param classifier
+	 * @return the number of violations
+	 */
+	public int train(IClassifier classifier) {
+		int violations = 0;
+		for (TrajectoryReader.Episode episode : mepisodes) {
+			violations += replay(classifier, episode);
+		}
+		mviolations += violations;
+		return violations;
+	}
+
+	/** the number of violations of all passes */
+	public int getViolations() {
+		return mviolations;
+	}
+
+	/** give the steps of the episode to the classifier */
+	private int replay(IClassifier classifier, TrajectoryReader.Episode episode) {
+		int violations = 0;
+		State<CorefCluster> initialState = new State<CorefCluster>();
+		initialState.setScore(episode.initialScore.clone());
+		Map<Long, State<CorefCluster>> created = new HashMap<Long, State<CorefCluster>>();
+
+		for (TrajectoryReader.Step step : episode.steps) {
+			List<State<CorefCluster>> candidates = new ArrayList<State<CorefCluster>>();
+			Map<Long, State<CorefCluster>> states = new HashMap<Long, State<CorefCluster>>();
+			for (int i = 0; i < step.ids.length; i++) {
+				State<CorefCluster> state = new State<CorefCluster>();
+				state.setID(step.ids[i]);
+				state.setScore(step.scores[i].clone());
+				state.setFeatures(toCounter(step.features[i]));
+				mcostFunction.setFeatures(state.getFeatures());
+				mcostFunction.setWeight(mweight);
+				state.setCostScore(mcostFunction.calculateCostFunction());
+				candidates.add(state);
+				states.put(step.ids[i], state);
+				created.put(step.ids[i], state);
+			}
+
+			PriorityQueue<State<CorefCluster>> statesLossFunction = new PriorityQueue<State<CorefCluster>>();
+			for (int i = 0; i < step.lossOrder.length; i++) {
+				statesLossFunction.add(candidates.get(step.lossOrder[i]), step.lossPriorities[i]);
+			}
+
+			// the beam of a cost policy episode is ordered by the loss, as the beam of the training search
+			FixedSizePriorityQueue<State<CorefCluster>> beam = new FixedSizePriorityQueue<State<CorefCluster>>(episode.beamWidth);
+			for (int i = 0; i < step.beam.length; i++) {
+				State<CorefCluster> state = resolve(step.beam[i], initialState, created);
+				double priority = episode.policy == TrajectoryWriter.COST_POLICY ? state.getScore()[0] : step.beamPriorities[i];
+				beam.add(state, priority);
+			}
+
+			moracle.setGood(candidates, step.good);
+			classifier.setBeam(beam);
+			classifier.setBestState(resolve(step.bestState, initialState, created));
+			classifier.setPreviousBestState(resolve(step.previousBestState, initialState, created));
+			classifier.setGoldOracle(moracle);
+			classifier.setState(states);
+			classifier.setStatesLossFunction(statesLossFunction);
+			classifier.setWeight(mweight);
+			classifier.setTotalWeight(mtotalWeight);
+			classifier.setSearchStep(step.step);
+			classifier.setBestScore(step.bestScore);
+			classifier.train();
+			mweight = classifier.getWeight();
+			mtotalWeight = classifier.getTotalWeight();
+			violations += classifier.getViolations();
+
+			// normalize the weight
+			if (ExperimentConstructor.normalizeWeight) {
+				mweight = DoubleOperation.normalize(mweight);
+				mtotalWeight = DoubleOperation.normalize(mtotalWeight);
+			}
+		}
+		return violations;
+	}
+
+	/** the state of the reference */
+	private State<CorefCluster> resolve(TrajectoryReader.Reference reference, State<CorefCluster> initialState, Map<Long, State<CorefCluster>> created) {
+		if (reference.kind == TrajectoryWriter.INITIAL) return initialState;
+		if (reference.kind == TrajectoryWriter.EMPTY) return new State<CorefCluster>();
+
+		State<CorefCluster> state = created.get(reference.id);
+		if (state == null) {
+			throw new RuntimeException("the state " + reference.id + " is not a candidate of the episode");
+		}
+		return state;
+	}
+
+	/** the features of the dense vector */
+	private static Counter<String> toCounter(double[] values) {
+		Counter<String> features = new ClassicCounter<String>();
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != 0.0) {
+				features.setCount(Feature.featuresName[i], values[i]);
+			}
+		}
+		return features;
+	}
+
+	/**
+	 * train the classifier from the trajectory files, and print the weights of each iteration
+	 *
+	 * @param args the classifier, the number of iterations, the learning rate, the log file and the trajectory files
+	 */
+	public static void main(String[] args) {
+		if (args.length < 5) {
+			System.out.println("usage: ReplayTrainer classifier noOfIteration learningRate logFile trajectory...");
+			return;
+		}
+		String model = args[0];
+		int iteration = Integer.parseInt(args[1]);
+		ExperimentConstructor.mParameters = new HashMap<String, Map<String, Object>>();
+		Map<String, Object> classifierParameters = new HashMap<String, Object>();
+		classifierParameters.put("model", model);
+		classifierParameters.put("noOfIteration", iteration);
+		classifierParameters.put("noOfFeature", Feature.featuresName.length);
+		classifierParameters.put("learningRate", Double.parseDouble(args[2]));
+		ExperimentConstructor.mParameters.put(EecbConstants.CLASSIFIER, classifierParameters);
+		ExperimentConstructor.logFile = args[3];
+
+		String[] paths = new String[args.length - 4];
+		System.arraycopy(args, 4, paths, 0, paths.length);
+		ReplayTrainer trainer = new ReplayTrainer(paths);
+		System.out.println("episodes : " + trainer.getNoOfEpisodes());
+		for (int i = 0; i < iteration; i++) {
+			int violations = trainer.train(ExperimentConstructor.createClassifier(model));
+			System.out.println("iteration " + (i + 1) + ", violations : " + violations);
+			System.out.println("weight vector : " + DoubleOperation.printArray(trainer.getWeight()));
+			System.out.println("average weight vector : " + DoubleOperation.printArray(DoubleOperation.divide(trainer.getTotalWeight().clone(), trainer.getViolations())));
+		}
+	}
+}
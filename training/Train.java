@@ -3,6 +3,7 @@ package edu.oregonstate.training;
 import edu.oregonstate.classifier.LinearRegression;
 import edu.oregonstate.experiment.ExperimentConstructor;
 import edu.oregonstate.features.Feature;
+import edu.oregonstate.features.FeatureStore;
 import edu.oregonstate.io.ResultOutput;
 import edu.oregonstate.search.IterativeResolution;
 import edu.oregonstate.util.EecbConstants;
@@ -62,7 +63,12 @@ public class Train {
 					ExperimentConstructor.printParameters(document, topic);
 					
 				    IterativeResolution ir = new IterativeResolution(document, model);
+				    FeatureStore featureStore = ExperimentConstructor.getFeatureStore(topic);
+				    ir.setFeatureStore(featureStore);
 				    ir.merge();
+				    if (featureStore != null) {
+				    	ResultOutput.writeTextFile(ExperimentConstructor.logFile, featureStore.statistics());
+				    }
 				    
 				    // after search parameters
 					ResultOutput.writeTextFile(ExperimentConstructor.logFile, "topic " + topic + "'s detail after merge");